@@ -0,0 +1,45 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.realm.scanner;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter: the delay before retry {@code n} lies between half and all of
+ * {@code base * 2^n}, capped at a maximum, so scans that failed together don't all come back at once.
+ */
+class Backoff {
+    private static final int MAX_SHIFT = 30;
+
+    private final long baseMillis;
+    private final long maxMillis;
+    private final Random random = new Random();
+
+    Backoff(long baseMillis, long maxMillis) {
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * @param attempt the number of attempts that have failed so far, minus one.
+     */
+    long delay(int attempt) {
+        final long ceiling = Math.min(maxMillis, baseMillis << Math.min(attempt, MAX_SHIFT));
+        return ceiling / 2 + (long) (random.nextDouble() * (ceiling / 2));
+    }
+}
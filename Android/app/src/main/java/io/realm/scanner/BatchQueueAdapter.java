@@ -0,0 +1,147 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.realm.ObjectChangeSet;
+import io.realm.RealmObjectChangeListener;
+import io.realm.scanner.model.Scan;
+
+/**
+ * Queue of the scans submitted in one batch. Every scan gets its own change listener, which refreshes the list
+ * whenever that scan's status or results change.
+ */
+class BatchQueueAdapter extends BaseAdapter {
+
+    interface Listener {
+        /**
+         * Called once all three results of a scan in the batch have arrived.
+         */
+        void onScanResultsReady(Scan scan);
+    }
+
+    private final LayoutInflater inflater;
+    private final Listener listener;
+    private final List<Scan> scans = new ArrayList<>();
+    private final List<RealmObjectChangeListener<Scan>> scanListeners = new ArrayList<>();
+
+    BatchQueueAdapter(Context context, Listener listener) {
+        this.inflater = LayoutInflater.from(context);
+        this.listener = listener;
+    }
+
+    void setScans(List<Scan> newScans) {
+        clear();
+        for (Scan scan : newScans) {
+            final RealmObjectChangeListener<Scan> scanListener = new RealmObjectChangeListener<Scan>() {
+                @Override
+                public void onChange(Scan scan, ObjectChangeSet changeSet) {
+                    if (changeSet != null && changeSet.isDeleted()) {
+                        return;
+                    }
+                    final boolean resultsChanged = Scans.isTextChanged(changeSet)
+                            || Scans.isClassificationChanged(changeSet)
+                            || Scans.isFaceDetectionChanged(changeSet);
+                    if (!resultsChanged && !Scans.isStatusChanged(changeSet)) {
+                        return;
+                    }
+                    if (resultsChanged && Scans.hasAllResults(scan)) {
+                        listener.onScanResultsReady(scan);
+                    }
+                    notifyDataSetChanged();
+                }
+            };
+            scan.addChangeListener(scanListener);
+            scans.add(scan);
+            scanListeners.add(scanListener);
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Stops listening to the scans of the batch.
+     *
+     * @return the scans that were in the batch.
+     */
+    List<Scan> clear() {
+        final List<Scan> cleared = new ArrayList<>(scans);
+        for (int i = 0; i < scans.size(); i++) {
+            final Scan scan = scans.get(i);
+            if (scan.isValid()) {
+                scan.removeChangeListener(scanListeners.get(i));
+            }
+        }
+        scans.clear();
+        scanListeners.clear();
+        notifyDataSetChanged();
+        return cleared;
+    }
+
+    /**
+     * @return {@code true} if the batch is empty or every scan in it has either completed or failed.
+     */
+    boolean isFinished() {
+        for (Scan scan : scans) {
+            if (scan.isValid()) {
+                final String status = scan.getStatus();
+                if (!status.equals(StatusLiteral.COMPLETED) && !status.equals(StatusLiteral.FAILED)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getCount() {
+        return scans.size();
+    }
+
+    @Override
+    public Scan getItem(int position) {
+        return scans.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        final View view = convertView != null
+                ? convertView
+                : inflater.inflate(android.R.layout.simple_list_item_2, parent, false);
+        final TextView title = (TextView) view.findViewById(android.R.id.text1);
+        final TextView status = (TextView) view.findViewById(android.R.id.text2);
+        final Scan scan = getItem(position);
+        title.setText("Image " + (position + 1) + " of " + scans.size());
+        status.setText(scan.isValid() ? scan.getStatus() : "Removed");
+        return view;
+    }
+}
@@ -0,0 +1,166 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.realm.scanner;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Bitmaps that are no longer displayed, kept so the next decode can reuse their memory through
+ * {@link BitmapFactory.Options#inBitmap} instead of allocating a fresh bitmap, which on a long session means far fewer
+ * large allocations and garbage collections.
+ * <p>
+ * Reuse relies on any large enough mutable bitmap being accepted, which holds from KitKat on. On older devices
+ * the pool stays empty and bitmaps passed to {@link #put(Bitmap)} are recycled straight away. The pool holds at most
+ * {@code maxBytes}, dropping the bitmaps that were put first. Only bitmaps that are certain not to be drawn any more
+ * may be put. Thread safe.
+ */
+class BitmapPool {
+    /**
+     * A pooled bitmap is only handed out for a decode that needs at least this fraction of its memory.
+     */
+    private static final int MAX_WASTE_FACTOR = 4;
+
+    private final LinkedList<Bitmap> bitmaps = new LinkedList<>();
+    private final int maxBytes;
+    private int bytes;
+
+    BitmapPool(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    /**
+     * Gives the bitmap back for reuse, or recycles it if it can't be reused or doesn't fit.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (!isSupported() || !bitmap.isMutable() || bitmap.getAllocationByteCount() > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        bitmaps.addLast(bitmap);
+        bytes += bitmap.getAllocationByteCount();
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * Prepares a decode that is about to produce a {@code width} by {@code height} bitmap: the result is made mutable,
+     * so it can be pooled later, and reuses a pooled bitmap if one is large enough. Decoders must call
+     * {@link #releaseReuse(BitmapFactory.Options)} and try again if the decode rejects the bitmap.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    void prepare(BitmapFactory.Options options, int width, int height) {
+        if (!isSupported()) {
+            return;
+        }
+        options.inMutable = true;
+        options.inBitmap = take(width * height * bytesPerPixel(options.inPreferredConfig));
+    }
+
+    /**
+     * Stops a decode from reusing a bitmap, which goes back to the pool.
+     */
+    void releaseReuse(BitmapFactory.Options options) {
+        final Bitmap bitmap = options.inBitmap;
+        options.inBitmap = null;
+        put(bitmap);
+    }
+
+    /**
+     * The size of a decode sampled by {@code sampleSize}, rounded up as the decoders may.
+     */
+    static int sampled(int size, int sampleSize) {
+        final int divisor = Math.max(1, sampleSize);
+        return (size + divisor - 1) / divisor;
+    }
+
+    /**
+     * Shrinks the pool for a {@link ComponentCallbacks2} trim level: emptied once memory is running low or the UI is
+     * hidden, halved on the first warning.
+     */
+    synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            trimToSize(bytes / 2);
+        }
+    }
+
+    synchronized void clear() {
+        trimToSize(0);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private synchronized Bitmap take(int neededBytes) {
+        Bitmap best = null;
+        for (Bitmap bitmap : bitmaps) {
+            final int size = bitmap.getAllocationByteCount();
+            if (size >= neededBytes && size <= neededBytes * MAX_WASTE_FACTOR
+                    && (best == null || size < best.getAllocationByteCount())) {
+                best = bitmap;
+            }
+        }
+        if (best != null) {
+            bitmaps.remove(best);
+            bytes -= best.getAllocationByteCount();
+        }
+        return best;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void trimToSize(int size) {
+        final Iterator<Bitmap> iterator = bitmaps.iterator();
+        while (bytes > size && iterator.hasNext()) {
+            final Bitmap bitmap = iterator.next();
+            iterator.remove();
+            bytes -= bitmap.getAllocationByteCount();
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * @return the memory held by the bitmap, which for a reused bitmap may be more than its pixels need.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    static int sizeOf(Bitmap bitmap) {
+        return isSupported() ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+}
@@ -0,0 +1,183 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+import io.realm.scanner.core.Hashes;
+
+/**
+ * Content-addressed store for encoded images, keyed by the SHA-256 of their bytes.
+ * <p>
+ * Blobs live as plain files so the synced {@link io.realm.scanner.model.Scan} only has to carry the hash. Once the
+ * store grows past its byte limit the least recently used blobs are evicted; reads count as use. Freshly stored blobs
+ * are pinned, and never evicted, until they have been uploaded and {@link #unpin(String)} is called.
+ */
+class BlobStore {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxBytes;
+    private final Set<String> pinned = new HashSet<>();
+
+    BlobStore(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Stores and pins the blob, unless an identical one is already present.
+     *
+     * @return the hash under which the blob can be read back.
+     */
+    synchronized String put(byte[] data) throws IOException {
+        final String hash = Hashes.sha256(data);
+        final File blob = new File(directory, hash);
+        pinned.add(hash);
+        if (blob.exists()) {
+            touch(blob);
+            return hash;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        final File temp = new File(directory, hash + TEMP_SUFFIX);
+        final FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(data);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(blob)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Unable to move blob into place: " + blob);
+        }
+        evictIfNeeded();
+        return hash;
+    }
+
+    /**
+     * Pins a blob stored by an earlier run of the app, as pins only last as long as the process.
+     *
+     * @return {@code false} if the blob has been evicted in the meantime.
+     */
+    synchronized boolean pin(String hash) {
+        if (!new File(directory, hash).exists()) {
+            return false;
+        }
+        pinned.add(hash);
+        return true;
+    }
+
+    /**
+     * Allows a blob to be evicted again once nothing is waiting to upload it.
+     */
+    synchronized void unpin(String hash) {
+        pinned.remove(hash);
+    }
+
+    /**
+     * @return the file holding the blob, or {@code null} if it was never stored or has been evicted.
+     */
+    synchronized File get(String hash) {
+        if (hash == null) {
+            return null;
+        }
+        final File blob = new File(directory, hash);
+        if (!blob.isFile()) {
+            return null;
+        }
+        touch(blob);
+        return blob;
+    }
+
+    /**
+     * @return the bytes of the blob, or {@code null} if it is not in the store.
+     */
+    byte[] read(String hash) throws IOException {
+        final File blob = get(hash);
+        if (blob == null) {
+            return null;
+        }
+        final byte[] data = new byte[(int) blob.length()];
+        final InputStream in = new FileInputStream(blob);
+        try {
+            int offset = 0;
+            int read;
+            while (offset < data.length && (read = in.read(data, offset, data.length - offset)) != -1) {
+                offset += read;
+            }
+            if (offset != data.length) {
+                throw new IOException("Blob was truncated: " + blob);
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    private void evictIfNeeded() {
+        final File[] blobs = directory.listFiles();
+        if (blobs == null) {
+            return;
+        }
+        long totalBytes = 0;
+        for (File blob : blobs) {
+            totalBytes += blob.length();
+        }
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+        Arrays.sort(blobs, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                final long lhsModified = lhs.lastModified();
+                final long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (File blob : blobs) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            if (pinned.contains(blob.getName())) {
+                continue;
+            }
+            final long length = blob.length();
+            if (blob.delete()) {
+                totalBytes -= length;
+            }
+        }
+    }
+
+    private static void touch(File blob) {
+        //noinspection ResultOfMethodCallIgnored
+        blob.setLastModified(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,167 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+import io.realm.scanner.model.ImageChunk;
+import io.realm.scanner.model.ImagePayload;
+import io.realm.scanner.model.Scan;
+
+/**
+ * Commits chunked {@link ImagePayload}s one {@link ImageChunk} per transaction on a background Realm.
+ * <p>
+ * Every chunk becomes its own small changeset, so a dropped connection only costs the chunks that had not been
+ * uploaded yet. Progress is kept in {@link ImagePayload#getCommittedChunks()}, which lets {@link #resumePending()}
+ * pick up interrupted uploads after the app restarts, reading the remaining bytes back from the {@link BlobStore}.
+ */
+class ChunkedUploader {
+    private static final String TAG = "ChunkedUploader";
+    static final int CHUNK_SIZE = 256 * 1024;
+
+    private final BlobStore blobStore;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    ChunkedUploader(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    static int chunkCount(int length) {
+        return (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    void upload(final String scanId) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Realm realm = Realm.getDefaultInstance();
+                try {
+                    final ImagePayload payload = realm.where(ImagePayload.class).equalTo("scanId", scanId).findFirst();
+                    if (payload != null) {
+                        upload(realm, payload);
+                    }
+                } finally {
+                    realm.close();
+                }
+            }
+        });
+    }
+
+    void resumePending() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Realm realm = Realm.getDefaultInstance();
+                try {
+                    final RealmResults<ImagePayload> chunked = realm.where(ImagePayload.class)
+                            .greaterThan("chunkCount", 0)
+                            .findAll();
+                    final List<ImagePayload> pending = new ArrayList<>();
+                    for (ImagePayload payload : chunked) {
+                        // Without the blob, the upload belongs to another device of the same user, which will
+                        // resume it itself.
+                        if (payload.getCommittedChunks() < payload.getChunkCount()
+                                && blobStore.get(payload.getImageHash()) != null) {
+                            pending.add(payload);
+                        }
+                    }
+                    // Resumed blobs were never pinned by this process, and a queued scan with the same image may
+                    // hold the pin, so they are not unpinned here.
+                    for (ImagePayload payload : pending) {
+                        uploadChunks(realm, payload);
+                    }
+                } finally {
+                    realm.close();
+                }
+            }
+        });
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void upload(Realm realm, ImagePayload payload) {
+        final String imageHash = payload.getImageHash();
+        // An interrupted or failed upload keeps its blob pinned, so it is still there to be resumed or retried.
+        if (uploadChunks(realm, payload)) {
+            blobStore.unpin(imageHash);
+        }
+    }
+
+    /**
+     * @return {@code true} once every chunk has been committed, {@code false} if the upload was interrupted or failed.
+     */
+    private boolean uploadChunks(Realm realm, ImagePayload payload) {
+        final String scanId = payload.getScanId();
+        final byte[] imageData;
+        try {
+            imageData = blobStore.read(payload.getImageHash());
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read image for scan " + scanId, e);
+            markFailed(realm, scanId);
+            return false;
+        }
+        if (imageData == null) {
+            Log.w(TAG, "Image for scan " + scanId + " was evicted before its upload finished");
+            markFailed(realm, scanId);
+            return false;
+        }
+
+        while (!Thread.currentThread().isInterrupted()) {
+            realm.beginTransaction();
+            // The scan may have been discarded on the UI thread in the meantime.
+            if (!payload.isValid() || payload.getCommittedChunks() >= payload.getChunkCount()) {
+                realm.cancelTransaction();
+                return true;
+            }
+            final int index = payload.getCommittedChunks();
+            final int from = index * CHUNK_SIZE;
+            final int to = Math.min(from + CHUNK_SIZE, imageData.length);
+            final ImageChunk chunk = realm.createObject(ImageChunk.class);
+            chunk.setIndex(index);
+            chunk.setData(Arrays.copyOfRange(imageData, from, to));
+            payload.getChunks().add(chunk);
+            payload.setCommittedChunks(index + 1);
+            if (index + 1 == payload.getChunkCount()) {
+                ScanTrace.stampUploaded(realm, scanId);
+            }
+            realm.commitTransaction();
+        }
+        return false;
+    }
+
+    private static void markFailed(Realm realm, String scanId) {
+        realm.beginTransaction();
+        final Scan scan = realm.where(Scan.class).equalTo("scanId", scanId).findFirst();
+        if (scan != null) {
+            scan.setStatus(StatusLiteral.FAILED);
+        }
+        realm.commitTransaction();
+    }
+}
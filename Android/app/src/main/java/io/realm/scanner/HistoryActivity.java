@@ -0,0 +1,139 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.realm.scanner;
+
+import android.os.Bundle;
+import android.support.v7.app.ActionBar;
+import android.support.v7.app.AlertDialog;
+import android.support.v7.app.AppCompatActivity;
+import android.text.SpannableStringBuilder;
+import android.text.format.DateUtils;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
+import android.widget.ListView;
+
+import io.realm.Realm;
+import io.realm.Sort;
+import io.realm.SyncConfiguration;
+import io.realm.scanner.model.Scan;
+
+/**
+ * Lists every scan in the synced Realm, newest first, see {@link ScanHistoryAdapter}. Tapping a scan shows its
+ * results.
+ */
+public class HistoryActivity extends AppCompatActivity {
+    /**
+     * How close to the end of the shown scans the next page is added.
+     */
+    private static final int PREFETCH_DISTANCE = 10;
+
+    private Realm realm;
+    private ListView listView;
+    private ScanHistoryAdapter adapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (!(Realm.getDefaultConfiguration() instanceof SyncConfiguration)) {
+            // Restored without MainActivity having logged in first.
+            finish();
+            return;
+        }
+        setContentView(R.layout.activity_history);
+        final ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null) {
+            actionBar.setDisplayHomeAsUpEnabled(true);
+        }
+
+        realm = Realm.getDefaultInstance();
+        final ScanImageLoader imageLoader = ((ScannerApplication) getApplication()).getScanImageLoader();
+        adapter = new ScanHistoryAdapter(this, imageLoader,
+                realm.where(Scan.class).findAllSortedAsync("createdAt", Sort.DESCENDING));
+
+        listView = (ListView) findViewById(R.id.history_list);
+        listView.setEmptyView(findViewById(R.id.history_empty));
+        listView.setAdapter(adapter);
+        listView.setRecyclerListener(adapter);
+        listView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (firstVisibleItem + visibleItemCount >= totalItemCount - PREFETCH_DISTANCE) {
+                    adapter.loadMore();
+                }
+            }
+        });
+        listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                showResults(adapter.getItem(position));
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (realm == null) {
+            return;
+        }
+        for (int i = 0; i < listView.getChildCount(); i++) {
+            adapter.onMovedToScrapHeap(listView.getChildAt(i));
+        }
+        adapter.close();
+        realm.close();
+        realm = null;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            finish();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void showResults(Scan scan) {
+        final SpannableStringBuilder results = new SpannableStringBuilder();
+        appendSection(results, ResultFormatter.text(scan));
+        appendSection(results, ResultFormatter.classification(scan));
+        appendSection(results, ResultFormatter.faceDetection(scan));
+        new AlertDialog.Builder(this)
+                .setTitle(DateUtils.formatDateTime(this, scan.getCreatedAt(),
+                        DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME))
+                .setMessage(results.length() > 0 ? results : scan.getStatus())
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+    }
+
+    private static void appendSection(SpannableStringBuilder builder, CharSequence section) {
+        if (section == null || section.length() == 0) {
+            return;
+        }
+        if (builder.length() > 0) {
+            builder.append('\n');
+        }
+        builder.append(section);
+    }
+}
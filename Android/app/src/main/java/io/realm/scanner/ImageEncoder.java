@@ -0,0 +1,139 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import java.io.ByteArrayOutputStream;
+
+import io.realm.scanner.core.QualitySearch;
+
+/**
+ * Encodes bitmaps to the highest quality that still fits a byte budget, see {@link QualitySearch}.
+ */
+class ImageEncoder {
+    private final int byteBudget;
+    private final Bitmap.CompressFormat format;
+    private final boolean preferResolution;
+
+    /**
+     * @param format either {@link Bitmap.CompressFormat#JPEG} or {@link Bitmap.CompressFormat#WEBP}.
+     */
+    ImageEncoder(int byteBudget, Bitmap.CompressFormat format, boolean preferResolution) {
+        this.byteBudget = byteBudget;
+        this.format = format;
+        this.preferResolution = preferResolution;
+    }
+
+    Result encode(Bitmap source) {
+        final long start = SystemClock.elapsedRealtime();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(byteBudget, 512 * 1024));
+        final QualitySearch.Result result = QualitySearch.encode(new BitmapImage(source, out), byteBudget,
+                preferResolution);
+        return new Result(result.data, format, result.quality, result.width, result.height, result.attempts,
+                SystemClock.elapsedRealtime() - start);
+    }
+
+    /**
+     * Scales the bitmap down to fit {@code maxDimension} and encodes it once as a JPEG at a fixed quality. Thumbnails
+     * are small enough that searching for a quality isn't worth it.
+     */
+    static Result thumbnail(Bitmap source, int maxDimension, int quality) {
+        final long start = SystemClock.elapsedRealtime();
+        final float scale = Math.min(1f, (float) maxDimension / Math.max(source.getWidth(), source.getHeight()));
+        final int width = Math.max(1, Math.round(source.getWidth() * scale));
+        final int height = Math.max(1, Math.round(source.getHeight() * scale));
+        final Bitmap scaled = Bitmap.createScaledBitmap(source, width, height, true);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        scaled.compress(Bitmap.CompressFormat.JPEG, quality, out);
+        if (scaled != source) {
+            scaled.recycle();
+        }
+        return new Result(out.toByteArray(), Bitmap.CompressFormat.JPEG, quality, width, height, 1,
+                SystemClock.elapsedRealtime() - start);
+    }
+
+    /**
+     * Compresses through one shared output stream, so every attempt of a search reuses the same buffer.
+     */
+    private class BitmapImage implements QualitySearch.Image {
+        private final Bitmap bitmap;
+        private final ByteArrayOutputStream out;
+
+        BitmapImage(Bitmap bitmap, ByteArrayOutputStream out) {
+            this.bitmap = bitmap;
+            this.out = out;
+        }
+
+        @Override
+        public int getWidth() {
+            return bitmap.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return bitmap.getHeight();
+        }
+
+        @Override
+        public byte[] compress(int quality) {
+            out.reset();
+            bitmap.compress(format, quality, out);
+            return out.toByteArray();
+        }
+
+        @Override
+        public QualitySearch.Image scale(int width, int height) {
+            return new BitmapImage(Bitmap.createScaledBitmap(bitmap, width, height, true), out);
+        }
+
+        @Override
+        public void release() {
+            bitmap.recycle();
+        }
+    }
+
+    static class Result {
+        final byte[] data;
+        final Bitmap.CompressFormat format;
+        final int quality;
+        final int width;
+        final int height;
+        final int attempts;
+        final long encodeMillis;
+
+        Result(byte[] data, Bitmap.CompressFormat format, int quality, int width, int height, int attempts,
+               long encodeMillis) {
+            this.data = data;
+            this.format = format;
+            this.quality = quality;
+            this.width = width;
+            this.height = height;
+            this.attempts = attempts;
+            this.encodeMillis = encodeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return format + " q" + quality + " " + width + "x" + height + ", " + data.length + " bytes in "
+                    + encodeMillis + "ms (" + attempts + " attempts)";
+        }
+    }
+}
@@ -0,0 +1,447 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import android.content.ContentResolver;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.scanner.core.SampleSize;
+import io.realm.scanner.core.Streams;
+import io.realm.scanner.model.CachedResult;
+
+/**
+ * Reads, downsamples and re-encodes picked or captured photos on a background thread.
+ * <p>
+ * The executor is bounded both in threads and in pending work, so a user hammering the picker can't queue up an
+ * unbounded number of full-size decodes. Decoded bitmaps go back to the {@link BitmapPool} once encoded, so the
+ * next ingest can decode into the same memory. Every image is also looked up in the {@link ResultCache} here, so
+ * the main thread never has to. Results are always delivered on the main thread, and never after the
+ * {@link CancellationSignal} passed in by the caller has been cancelled.
+ */
+class ImageIngestor {
+    private static final String TAG = "ImageIngestor";
+    private static final int WORKER_COUNT = 1;
+    private static final int MAX_PENDING = 2;
+    private static final int MAX_DIMENSION = 1600;
+    private static final int THUMBNAIL_SIZE = 192;
+    private static final int THUMBNAIL_QUALITY = 70;
+
+    interface Callback {
+        void onImageReady(IngestedImage image);
+
+        void onImageFailed(Exception e);
+    }
+
+    interface BatchCallback {
+        void onImagesReady(List<IngestedImage> images, int failedCount);
+    }
+
+    private final ContentResolver contentResolver;
+    private final BlobStore blobStore;
+    private final int imageLimit;
+    private final ImageEncoder encoder;
+    private final BitmapPool bitmapPool;
+    private final ResultCache resultCache;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT,
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(MAX_PENDING));
+
+    /**
+     * @param imageLimit originals up to this size are uploaded untouched, anything larger is re-encoded.
+     */
+    ImageIngestor(ContentResolver contentResolver, BlobStore blobStore, int imageLimit, ImageEncoder encoder,
+                  BitmapPool bitmapPool, ResultCache resultCache) {
+        this.contentResolver = contentResolver;
+        this.blobStore = blobStore;
+        this.imageLimit = imageLimit;
+        this.encoder = encoder;
+        this.bitmapPool = bitmapPool;
+        this.resultCache = resultCache;
+    }
+
+    void ingestUri(final Uri imageUri, CancellationSignal cancellationSignal, Callback callback) {
+        final ScanTrace trace = ScanTrace.start();
+        submit(new IngestTask(cancellationSignal, callback) {
+            @Override
+            IngestedImage ingest() throws IOException {
+                return readUri(imageUri, cancellationSignal, trace);
+            }
+        });
+    }
+
+    /**
+     * Ingests a whole batch of picked images in a single task, one after the other. Only the metadata of every image
+     * is handed back; the bytes are left in the {@link BlobStore} so a large batch never sits in memory at once.
+     * Images that can't be read are skipped and counted.
+     */
+    void ingestUris(final List<Uri> imageUris, final CancellationSignal cancellationSignal,
+                    final BatchCallback callback) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final List<IngestedImage> images = new ArrayList<>();
+                    int failures = 0;
+                    try {
+                        for (Uri imageUri : imageUris) {
+                            try {
+                                images.add(readUri(imageUri, cancellationSignal, ScanTrace.start()).withoutImageData());
+                            } catch (IOException e) {
+                                e.printStackTrace();
+                                failures++;
+                            } catch (OutOfMemoryError e) {
+                                e.printStackTrace();
+                                failures++;
+                            } catch (OperationCanceledException e) {
+                                throw e;
+                            } catch (RuntimeException e) {
+                                // A decoder or provider that fails on one image shouldn't take the batch with it.
+                                e.printStackTrace();
+                                failures++;
+                            }
+                        }
+                    } catch (OperationCanceledException e) {
+                        // No scan will ever refer to the images stored so far.
+                        unpin(images);
+                        return;
+                    }
+                    final int failedCount = failures;
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (cancellationSignal.isCanceled()) {
+                                unpin(images);
+                            } else {
+                                callback.onImagesReady(images, failedCount);
+                            }
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancellationSignal.isCanceled()) {
+                        callback.onImagesReady(Collections.<IngestedImage>emptyList(), imageUris.size());
+                    }
+                }
+            });
+        }
+    }
+
+    private IngestedImage readUri(Uri imageUri, CancellationSignal cancellationSignal, ScanTrace trace)
+            throws IOException {
+        cancellationSignal.throwIfCanceled();
+        // Small enough originals are uploaded untouched, and reading them is bounded by the upload limit.
+        final long length = contentLength(imageUri);
+        if (length >= 0 && length <= imageLimit) {
+            final byte[] imageData = readUpToLimit(imageUri, (int) length, cancellationSignal);
+            if (imageData != null) {
+                final BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeByteArray(imageData, 0, imageData.length, options);
+                if (trace != null) {
+                    trace.decoded();
+                }
+                final Bitmap preview = decodePreview(imageData, options.outWidth, options.outHeight);
+                final long perceptualHash;
+                final ImageEncoder.Result thumbnail;
+                try {
+                    perceptualHash = PerceptualHash.of(preview);
+                    thumbnail = ImageEncoder.thumbnail(preview, THUMBNAIL_SIZE, THUMBNAIL_QUALITY);
+                } finally {
+                    bitmapPool.put(preview);
+                }
+                if (trace != null) {
+                    trace.encoded();
+                }
+                return store(imageData, options.outWidth, options.outHeight, perceptualHash, thumbnail, trace);
+            }
+        }
+
+        // Anything else is never held in memory at full size: one pass over the stream for the bounds,
+        // and a second one that decodes straight into the sampled bitmap.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(imageUri, options);
+        cancellationSignal.throwIfCanceled();
+        options = sampledOptions(options.outWidth, options.outHeight);
+        Bitmap bitmap;
+        try {
+            bitmap = decodeStream(imageUri, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap was turned down after all.
+            bitmapPool.releaseReuse(options);
+            bitmap = decodeStream(imageUri, options);
+        }
+        return compress(bitmap, trace);
+    }
+
+    void ingestFile(final String imagePath, CancellationSignal cancellationSignal, Callback callback) {
+        final ScanTrace trace = ScanTrace.start();
+        submit(new IngestTask(cancellationSignal, callback) {
+            @Override
+            IngestedImage ingest() throws IOException {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeFile(imagePath, options);
+                throwIfCanceled();
+                options = sampledOptions(options.outWidth, options.outHeight);
+                Bitmap bitmap;
+                try {
+                    bitmap = BitmapFactory.decodeFile(imagePath, options);
+                } catch (IllegalArgumentException e) {
+                    bitmapPool.releaseReuse(options);
+                    bitmap = BitmapFactory.decodeFile(imagePath, options);
+                }
+                return compress(bitmap, trace);
+            }
+        });
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void submit(IngestTask task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.deliverFailure(e);
+        }
+    }
+
+    private InputStream openInputStream(Uri imageUri) throws IOException {
+        final InputStream imageStream = contentResolver.openInputStream(imageUri);
+        if (imageStream == null) {
+            throw new IOException("Unable to open " + imageUri);
+        }
+        return imageStream;
+    }
+
+    private long contentLength(Uri imageUri) {
+        AssetFileDescriptor descriptor = null;
+        try {
+            descriptor = contentResolver.openAssetFileDescriptor(imageUri, "r");
+            return descriptor == null ? AssetFileDescriptor.UNKNOWN_LENGTH : descriptor.getLength();
+        } catch (FileNotFoundException e) {
+            return AssetFileDescriptor.UNKNOWN_LENGTH;
+        } finally {
+            if (descriptor != null) {
+                try {
+                    descriptor.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the raw bytes behind the {@link Uri}, or {@code null} if the stream turns out to be larger than the
+     * upload limit after all.
+     */
+    private byte[] readUpToLimit(Uri imageUri, int length, CancellationSignal cancellationSignal) throws IOException {
+        final InputStream imageStream = new CancellableInputStream(openInputStream(imageUri), cancellationSignal);
+        try {
+            return Streams.readUpToLimit(imageStream, length, imageLimit);
+        } finally {
+            imageStream.close();
+        }
+    }
+
+    private Bitmap decodeStream(Uri imageUri, BitmapFactory.Options options) throws IOException {
+        final InputStream imageStream = new BufferedInputStream(openInputStream(imageUri),
+                Streams.PRIME_NUMBER_1000th);
+        try {
+            return BitmapFactory.decodeStream(imageStream, null, options);
+        } finally {
+            imageStream.close();
+        }
+    }
+
+    /**
+     * Options for decoding an image that is re-encoded, in full colour into a pooled bitmap if there is one.
+     */
+    private BitmapFactory.Options sampledOptions(int outWidth, int outHeight) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = SampleSize.toFit(outWidth, outHeight, MAX_DIMENSION);
+        bitmapPool.prepare(options, BitmapPool.sampled(outWidth, options.inSampleSize),
+                BitmapPool.sampled(outHeight, options.inSampleSize));
+        return options;
+    }
+
+    private IngestedImage compress(Bitmap bitmap, ScanTrace trace) throws IOException {
+        if (bitmap == null) {
+            throw new IOException("Unable to decode image");
+        }
+        if (trace != null) {
+            trace.decoded();
+        }
+        final long perceptualHash;
+        final ImageEncoder.Result thumbnail;
+        final ImageEncoder.Result encoded;
+        try {
+            perceptualHash = PerceptualHash.of(bitmap);
+            thumbnail = ImageEncoder.thumbnail(bitmap, THUMBNAIL_SIZE, THUMBNAIL_QUALITY);
+            encoded = encoder.encode(bitmap);
+        } finally {
+            bitmapPool.put(bitmap);
+        }
+        if (trace != null) {
+            trace.encoded();
+        }
+        Log.d(TAG, "Encoded " + encoded);
+        return store(encoded.data, encoded.width, encoded.height, perceptualHash, thumbnail, trace);
+    }
+
+    /**
+     * Decodes an image that is uploaded untouched just large enough for its thumbnail, from a heavily subsampled
+     * decode so it stays cheap. The perceptual hash is taken from the same bitmap.
+     */
+    private Bitmap decodePreview(byte[] imageData, int width, int height) throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = SampleSize.toCover(width, height, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+        bitmapPool.prepare(options, BitmapPool.sampled(width, options.inSampleSize),
+                BitmapPool.sampled(height, options.inSampleSize));
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(imageData, 0, imageData.length, options);
+        } catch (IllegalArgumentException e) {
+            bitmapPool.releaseReuse(options);
+            bitmap = BitmapFactory.decodeByteArray(imageData, 0, imageData.length, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("Unable to decode image");
+        }
+        return bitmap;
+    }
+
+    private void unpin(List<IngestedImage> images) {
+        for (IngestedImage image : images) {
+            blobStore.unpin(image.imageHash);
+        }
+    }
+
+    private IngestedImage store(byte[] imageData, int width, int height, long perceptualHash,
+                                ImageEncoder.Result thumbnail, ScanTrace trace) throws IOException {
+        final String imageHash = blobStore.put(imageData);
+        final CachedResult cachedResult = resultCache.lookup(imageHash, perceptualHash);
+        return new IngestedImage(imageData, imageHash, perceptualHash, width, height, thumbnail, cachedResult, trace);
+    }
+
+    private abstract class IngestTask implements Runnable {
+        final CancellationSignal cancellationSignal;
+        private final Callback callback;
+
+        IngestTask(CancellationSignal cancellationSignal, Callback callback) {
+            this.cancellationSignal = cancellationSignal;
+            this.callback = callback;
+        }
+
+        abstract IngestedImage ingest() throws IOException;
+
+        void throwIfCanceled() {
+            cancellationSignal.throwIfCanceled();
+        }
+
+        @Override
+        public void run() {
+            try {
+                throwIfCanceled();
+                final IngestedImage image = ingest();
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (cancellationSignal.isCanceled()) {
+                            blobStore.unpin(image.imageHash);
+                        } else {
+                            callback.onImageReady(image);
+                        }
+                    }
+                });
+            } catch (OperationCanceledException e) {
+                // The activity went away, nobody is waiting for the result.
+            } catch (IOException e) {
+                deliverFailure(e);
+            } catch (OutOfMemoryError e) {
+                deliverFailure(new IOException("Image too large to process", e));
+            } catch (RuntimeException e) {
+                // A provider or decoder bug must not kill the worker and leave the caller waiting.
+                deliverFailure(e);
+            }
+        }
+
+        void deliverFailure(final Exception e) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancellationSignal.isCanceled()) {
+                        callback.onImageFailed(e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Checks for cancellation before every read, so a large original stops being read as soon as nobody waits for it.
+     */
+    private static class CancellableInputStream extends FilterInputStream {
+        private final CancellationSignal cancellationSignal;
+
+        CancellableInputStream(InputStream in, CancellationSignal cancellationSignal) {
+            super(in);
+            this.cancellationSignal = cancellationSignal;
+        }
+
+        @Override
+        public int read() throws IOException {
+            cancellationSignal.throwIfCanceled();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            cancellationSignal.throwIfCanceled();
+            return super.read(buffer, offset, count);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import io.realm.scanner.model.CachedResult;
+
+/**
+ * An encoded image that has been written to the {@link BlobStore} and is ready to be uploaded.
+ * <p>
+ * The blob stays pinned in the store until {@link BlobStore#unpin(String)} is called for it. {@code imageData} is
+ * {@code null} when the bytes were left in the store only, as for batch scans.
+ */
+class IngestedImage {
+    final byte[] imageData;
+    final String imageHash;
+    final long perceptualHash;
+    final int size;
+    final int width;
+    final int height;
+    /**
+     * Small JPEG preview for the history list, kept even when the image data isn't.
+     */
+    final ImageEncoder.Result thumbnail;
+    /**
+     * The results of an earlier scan of the same image from the {@link ResultCache}, looked up off the main thread.
+     * {@code null} on a miss, or if it hasn't been looked up.
+     */
+    final CachedResult cachedResult;
+    /**
+     * {@code null} unless tracing is enabled.
+     */
+    final ScanTrace trace;
+
+    IngestedImage(byte[] imageData, String imageHash, long perceptualHash, int width, int height,
+                  ImageEncoder.Result thumbnail, CachedResult cachedResult, ScanTrace trace) {
+        this(imageData, imageHash, perceptualHash, imageData.length, width, height, thumbnail, cachedResult, trace);
+    }
+
+    IngestedImage(byte[] imageData, String imageHash, long perceptualHash, int size, int width, int height,
+                  ImageEncoder.Result thumbnail, CachedResult cachedResult, ScanTrace trace) {
+        this.imageData = imageData;
+        this.imageHash = imageHash;
+        this.perceptualHash = perceptualHash;
+        this.size = size;
+        this.width = width;
+        this.height = height;
+        this.thumbnail = thumbnail;
+        this.cachedResult = cachedResult;
+        this.trace = trace;
+    }
+
+    IngestedImage withoutImageData() {
+        return new IngestedImage(null, imageHash, perceptualHash, size, width, height, thumbnail, cachedResult,
+                trace);
+    }
+
+    IngestedImage withCachedResult(CachedResult cachedResult) {
+        return new IngestedImage(imageData, imageHash, perceptualHash, size, width, height, thumbnail, cachedResult,
+                trace);
+    }
+}
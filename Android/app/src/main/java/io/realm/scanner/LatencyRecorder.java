@@ -0,0 +1,66 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples in a ring buffer and reports percentiles over them.
+ */
+class LatencyRecorder {
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    LatencyRecorder(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the sample at the given percentile, or 0 if nothing has been recorded yet.
+     */
+    synchronized long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        final long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        final int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + getCount() + " p50=" + percentile(50) + "ms p95=" + percentile(95) + "ms p99=" + percentile(99)
+                + "ms";
+    }
+}
@@ -18,49 +18,65 @@
 
 package io.realm.scanner;
 
+import android.content.ClipData;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.graphics.Typeface;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
 import android.provider.MediaStore;
 import android.support.annotation.NonNull;
 import android.support.v4.content.FileProvider;
+import android.support.v4.os.CancellationSignal;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.ImageButton;
 import android.widget.ImageView;
+import android.widget.ListView;
+import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+import io.realm.ObjectChangeSet;
 import io.realm.ObjectServerError;
 import io.realm.Realm;
-import io.realm.RealmChangeListener;
+import io.realm.RealmObjectChangeListener;
 import io.realm.SyncConfiguration;
 import io.realm.SyncCredentials;
 import io.realm.SyncUser;
+import io.realm.scanner.model.CachedResult;
 import io.realm.scanner.model.Scan;
+import io.realm.scanner.model.ScanModule;
+import io.realm.scanner.model.ScanTiming;
 
-public class MainActivity extends AppCompatActivity implements RealmChangeListener<Scan> {
+public class MainActivity extends AppCompatActivity implements RealmObjectChangeListener<Scan> {
+    private static final String TAG = "MainActivity";
     private static final String REALM_URL = "realm://" + BuildConfig.OBJECT_SERVER_IP + ":9080/~/scanner";
     private static final String AUTH_URL = "http://" + BuildConfig.OBJECT_SERVER_IP + ":9080/auth";
     private static final String ID = "scanner@realm.io";
@@ -68,22 +84,134 @@ public class MainActivity extends AppCompatActivity implements RealmChangeListen
     private static final String TEST_IMAGE = "test_image.jpg";
     private static final int PRIME_NUMBER_1000th = 7919;
     private static final int IMAGE_LIMIT = 2 * 1024 * 1024;
+    // What re-encoded images aim for, well below the limit that is only there to bound what the server receives.
+    private static final int ENCODE_TARGET = 400 * 1024;
+    // Upload images as a series of small ImageChunk commits instead of one ImagePayload write.
+    private static final boolean CHUNKED_UPLOAD = true;
+    // Watson Visual Recognition only accepts JPEG and PNG, only switch to WEBP for a server that can handle it.
+    private static final Bitmap.CompressFormat ENCODE_FORMAT = Bitmap.CompressFormat.JPEG;
+    // The server always runs text recognition, so give up JPEG quality before resolution.
+    private static final boolean PREFER_TEXT_RESOLUTION = true;
 
     private static final int REQUEST_SELECT_PHOTO = PRIME_NUMBER_1000th;
     private static final int REQUEST_IMAGE_CAPTURE = REQUEST_SELECT_PHOTO + 1;
+    private static final int REQUEST_SELECT_PHOTOS = REQUEST_IMAGE_CAPTURE + 1;
     private static final int REQUEST_PERMISSION_WRITE = PRIME_NUMBER_1000th;
     private static final String ANDROID_PERMISSION_WRITE_EXTERNAL_STORAGE = "android.permission.WRITE_EXTERNAL_STORAGE";
+    private static final long LOGIN_RETRY_BASE_MILLIS = TimeUnit.SECONDS.toMillis(2);
+    private static final long LOGIN_RETRY_MAX_MILLIS = TimeUnit.MINUTES.toMillis(2);
 
     private Realm realm;
     private Scan currentScan;
+    private String pendingScanId;
+    private ScanWriteScheduler scanWriteScheduler;
     private ImageButton takePhoto;
     private ImageView image;
-    private TextView description;
+    private TextView textScanResultView;
+    private TextView classificationResultView;
+    private TextView faceDetectionResultView;
 
     private View capturePanel;
     private View scannedPanel;
     private View progressPanel;
+    private ListView batchPanel;
+    private BatchQueueAdapter batchQueueAdapter;
     private String currentPhotoPath;
+    private BlobStore blobStore;
+    private ResultCache resultCache;
+    private ScanImageLoader scanImageLoader;
+    private String displayedImageKey;
+    private ImageIngestor imageIngestor;
+    private ChunkedUploader chunkedUploader;
+    private CancellationSignal ingestCancellationSignal;
+    private ScanQueue scanQueue;
+    private ScanQueueFlusher scanQueueFlusher;
+    private ScanRetryScheduler scanRetryScheduler;
+    private final Handler loginHandler = new Handler();
+    private final Backoff loginBackoff = new Backoff(LOGIN_RETRY_BASE_MILLIS, LOGIN_RETRY_MAX_MILLIS);
+    private boolean loggingIn;
+    private boolean destroyed;
+    private int loginAttempts;
+
+    private final Runnable loginRunnable = new Runnable() {
+        @Override
+        public void run() {
+            login();
+        }
+    };
+
+    private final ScanQueueFlusher.Listener scanQueueListener = new ScanQueueFlusher.Listener() {
+        @Override
+        public void onOnline() {
+            if (realm == null && !loggingIn) {
+                loginHandler.removeCallbacks(loginRunnable);
+                login();
+            }
+        }
+
+        @Override
+        public void onFlushed(int count) {
+            Toast.makeText(MainActivity.this, "Uploading " + count + " queued scans", Toast.LENGTH_SHORT).show();
+        }
+    };
+
+    private final ImageIngestor.Callback ingestCallback = new ImageIngestor.Callback() {
+        @Override
+        public void onImageReady(IngestedImage image) {
+            ingestCancellationSignal = null;
+            cleanUpCurrentLabelScanIfNeeded();
+            cleanUpBatchIfNeeded();
+            uploadImage(image);
+        }
+
+        @Override
+        public void onImageFailed(Exception e) {
+            ingestCancellationSignal = null;
+            e.printStackTrace();
+            setTitle("Failed to Process");
+            showPanel(Panel.CAPTURE);
+        }
+    };
+
+    private final ImageIngestor.BatchCallback batchIngestCallback = new ImageIngestor.BatchCallback() {
+        @Override
+        public void onImagesReady(List<IngestedImage> images, int failedCount) {
+            ingestCancellationSignal = null;
+            if (images.isEmpty()) {
+                setTitle("Failed to Process");
+                showPanel(Panel.CAPTURE);
+                return;
+            }
+            if (scanQueueFlusher.shouldQueue()) {
+                scanQueue.add(images);
+                setTitle("Queued " + images.size() + " Scans");
+                showPanel(Panel.CAPTURE);
+                return;
+            }
+            uploadBatch(images);
+            setTitle(failedCount == 0
+                    ? "Batch of " + images.size()
+                    : "Batch of " + images.size() + " (" + failedCount + " failed)");
+            showPanel(Panel.BATCH);
+        }
+    };
+
+    private final BatchQueueAdapter.Listener batchQueueListener = new BatchQueueAdapter.Listener() {
+        @Override
+        public void onScanResultsReady(Scan scan) {
+            completeScan(scan);
+            invalidateOptionsMenu();
+        }
+    };
+
+    private final ScanImageLoader.Callback imageLoaderCallback = new ScanImageLoader.Callback() {
+        @Override
+        public void onBitmapLoaded(String key, Bitmap bitmap) {
+            if (key.equals(displayedImageKey)) {
+                image.setImageBitmap(bitmap);
+            }
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -93,17 +221,20 @@ public class MainActivity extends AppCompatActivity implements RealmChangeListen
         capturePanel = findViewById(R.id.capture_panel);
         scannedPanel = findViewById(R.id.scanned_panel);
         progressPanel = findViewById(R.id.progress_panel);
+        batchPanel = (ListView) findViewById(R.id.batch_panel);
+        batchQueueAdapter = new BatchQueueAdapter(this, batchQueueListener);
+        batchPanel.setAdapter(batchQueueAdapter);
 
         takePhoto = (ImageButton) findViewById(R.id.take_photo);
         image = (ImageView) findViewById(R.id.image);
-        description = (TextView) findViewById(R.id.description);
+        textScanResultView = (TextView) findViewById(R.id.text_scan_result);
+        classificationResultView = (TextView) findViewById(R.id.classification_result);
+        faceDetectionResultView = (TextView) findViewById(R.id.face_detection_result);
 
         takePhoto.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                if (realm != null) {
-                    showCommandsDialog();
-                }
+                showCommandsDialog();
             }
         });
 
@@ -112,25 +243,81 @@ public class MainActivity extends AppCompatActivity implements RealmChangeListen
 
         showPanel(Panel.CAPTURE);
 
+        final ScannerApplication application = (ScannerApplication) getApplication();
+        blobStore = application.getBlobStore();
+        resultCache = application.getResultCache();
+        scanImageLoader = application.getScanImageLoader();
+        imageIngestor = new ImageIngestor(getContentResolver(), blobStore, IMAGE_LIMIT,
+                new ImageEncoder(ENCODE_TARGET, ENCODE_FORMAT, PREFER_TEXT_RESOLUTION), application.getBitmapPool(),
+                resultCache);
+        chunkedUploader = new ChunkedUploader(blobStore);
+        scanQueue = application.getScanQueue();
+        scanQueueFlusher = new ScanQueueFlusher(this, scanQueue, blobStore, resultCache, scanQueueListener);
+        scanQueueFlusher.start();
+
         checkPermissionAndCopyTestAssetImage();
 
+        // A user that logged in on an earlier launch is persisted by Realm: open its Realm straight away rather
+        // than waiting for a login round trip before the capture button shows up.
+        final SyncUser cachedUser = SyncUser.currentUser();
+        if (cachedUser != null && cachedUser.isValid()) {
+            openRealm(cachedUser, StartupTimer.CACHED_USER);
+            return;
+        }
+        login();
+    }
+
+    /**
+     * Logs in, and retries with a backoff on failure. Until it succeeds scans are captured into the {@link ScanQueue}.
+     */
+    private void login() {
+        loggingIn = true;
         final SyncCredentials syncCredentials = SyncCredentials.usernamePassword(ID, PASSWORD, false);
         SyncUser.loginAsync(syncCredentials, AUTH_URL, new SyncUser.Callback<SyncUser>() {
             @Override
             public void onSuccess(@NonNull SyncUser user) {
-                final SyncConfiguration syncConfiguration = new SyncConfiguration.Builder(user, REALM_URL).build();
-                Realm.setDefaultConfiguration(syncConfiguration);
-                realm = Realm.getDefaultInstance();
-                takePhoto.setVisibility(View.VISIBLE);
-                takePhoto.setClickable(true);
+                loggingIn = false;
+                if (destroyed) {
+                    return;
+                }
+                openRealm(user, StartupTimer.LOGIN);
             }
 
             @Override
             public void onError(@NonNull ObjectServerError error) {
+                loggingIn = false;
+                Log.w(TAG, "Unable to log in, queueing scans until the server can be reached", error);
+                if (destroyed) {
+                    return;
+                }
+                enableCapture();
+                // Coming back online retries straight away, see scanQueueListener.
+                loginHandler.postDelayed(loginRunnable, loginBackoff.delay(loginAttempts++));
             }
         });
     }
 
+    private void enableCapture() {
+        takePhoto.setVisibility(View.VISIBLE);
+        takePhoto.setClickable(true);
+    }
+
+    private void openRealm(SyncUser user, String startupKind) {
+        final SyncConfiguration syncConfiguration = new SyncConfiguration.Builder(user, REALM_URL)
+                .modules(new ScanModule())
+                .compactOnLaunch(new RealmCompaction("scanner"))
+                .build();
+        Realm.setDefaultConfiguration(syncConfiguration);
+        realm = Realm.getDefaultInstance();
+        scanWriteScheduler = new ScanWriteScheduler(realm);
+        enableCapture();
+        StartupTimer.interactive(this, startupKind);
+        // Nothing the user is waiting for: resume uploads only once the capture button is up.
+        chunkedUploader.resumePending();
+        scanQueueFlusher.attach(realm, syncConfiguration, scanWriteScheduler, chunkedUploader);
+        scanRetryScheduler = new ScanRetryScheduler(realm, scanWriteScheduler, chunkedUploader);
+    }
+
     private void checkPermissionAndCopyTestAssetImage() {
         if (Build.VERSION.SDK_INT > Build.VERSION_CODES.LOLLIPOP_MR1) {
             if (checkSelfPermission(ANDROID_PERMISSION_WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED) {
@@ -143,13 +330,27 @@ public class MainActivity extends AppCompatActivity implements RealmChangeListen
         }
     }
 
+    /**
+     * Copies the test image to the pictures directory on a background thread, it's not needed for starting up.
+     */
     private void copyTestAssetIfNeeded() {
-        String imagePath = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES) + File.separator + TEST_IMAGE;
+        final Context context = getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                copyTestAsset(context);
+            }
+        });
+    }
+
+    private static void copyTestAsset(Context context) {
+        String imagePath = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES)
+                + File.separator + TEST_IMAGE;
         if (new File(imagePath).exists()) {
             return;
         }
 
-        AssetManager assetManager = getAssets();
+        AssetManager assetManager = context.getAssets();
         try {
             InputStream in = assetManager.open(TEST_IMAGE);
             OutputStream out = new FileOutputStream(imagePath);
@@ -162,7 +363,7 @@ public class MainActivity extends AppCompatActivity implements RealmChangeListen
             out.flush();
             out.close();
 
-            MediaScannerConnection.scanFile(this, new String[]{imagePath}, new String[]{"image/jpeg"}, null);
+            MediaScannerConnection.scanFile(context, new String[]{imagePath}, new String[]{"image/jpeg"}, null);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -171,8 +372,20 @@ public class MainActivity extends AppCompatActivity implements RealmChangeListen
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        destroyed = true;
+        cancelIngestIfNeeded();
+        imageIngestor.shutdown();
+        chunkedUploader.shutdown();
+        scanQueueFlusher.stop();
+        loginHandler.removeCallbacks(loginRunnable);
         cleanUpCurrentLabelScanIfNeeded();
+        cleanUpBatchIfNeeded();
+        if (scanRetryScheduler != null) {
+            scanRetryScheduler.close();
+            scanRetryScheduler = null;
+        }
         if (realm != null) {
+            scanWriteScheduler.flushNow();
             realm.close();
             realm = null;
         }
@@ -184,20 +397,21 @@ public class MainActivity extends AppCompatActivity implements RealmChangeListen
         getMenuInflater().inflate(R.menu.main, menu);
         MenuItem item = menu.getItem(0);
         item.setEnabled(false);
+        menu.findItem(R.id.timings).setVisible(ScanTrace.ENABLED);
         return true;
     }
 
     @Override
     public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.history).setEnabled(realm != null);
         final MenuItem item = menu.getItem(0);
-        if (currentScan != null) {
-            final String textScanResult = currentScan.getTextScanResult();
-            final String classificationResult = currentScan.getClassificationResult();
-            final String faceDetectionResult = currentScan.getFaceDetectionResult();
-            if (textScanResult != null && classificationResult != null && faceDetectionResult != null) {
-                item.setEnabled(true);
-                return true;
-            }
+        if (batchQueueAdapter.getCount() > 0) {
+            item.setEnabled(batchQueueAdapter.isFinished());
+            return true;
+        }
+        if (currentScan != null && Scans.hasAllResults(currentScan)) {
+            item.setEnabled(true);
+            return true;
         }
         item.setEnabled(false);
         return true;
@@ -208,19 +422,63 @@ public class MainActivity extends AppCompatActivity implements RealmChangeListen
         if (item.getItemId() == R.id.refresh) {
             setTitle(R.string.app_name);
             cleanUpCurrentLabelScanIfNeeded();
+            cleanUpBatchIfNeeded();
             showPanel(Panel.CAPTURE);
             return true;
         }
+        if (item.getItemId() == R.id.history) {
+            startActivity(new Intent(this, HistoryActivity.class));
+            return true;
+        }
+        if (item.getItemId() == R.id.timings) {
+            showTimingReport();
+            return true;
+        }
         return false;
     }
 
+    private void showTimingReport() {
+        if (realm == null) {
+            return;
+        }
+        final int padding = getResources().getDimensionPixelSize(R.dimen.activity_horizontal_margin);
+        final TextView reportView = new TextView(this);
+        reportView.setTypeface(Typeface.MONOSPACE);
+        reportView.setPadding(padding, padding, padding, padding);
+        reportView.setText(ScanTimingReport.build(realm.where(ScanTiming.class).findAll()) + "\n"
+                + StartupTimer.summary(this));
+        final ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(reportView);
+        new AlertDialog.Builder(this)
+                .setTitle("Scan Timings")
+                .setView(scrollView)
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+    }
+
+    /**
+     * Stops showing the current scan. The scan itself stays in the history.
+     */
     private void cleanUpCurrentLabelScanIfNeeded() {
         if (currentScan != null) {
             currentScan.removeAllChangeListeners();
-            realm.beginTransaction();
-            currentScan.deleteFromRealm();
-            realm.commitTransaction();
+            image.setImageDrawable(null);
+            scanImageLoader.remove(currentScan.getScanId());
+            displayedImageKey = null;
+            clearResultSections();
             currentScan = null;
+            invalidateOptionsMenu();
+        }
+        pendingScanId = null;
+    }
+
+    /**
+     * Stops showing the batch. Its scans stay in the history.
+     */
+    private void cleanUpBatchIfNeeded() {
+        if (batchQueueAdapter.getCount() > 0) {
+            batchQueueAdapter.clear();
+            invalidateOptionsMenu();
         }
     }
 
@@ -248,20 +506,19 @@ public class MainActivity extends AppCompatActivity implements RealmChangeListen
         startActivityForResult(photoPickerIntent, REQUEST_SELECT_PHOTO);
     }
 
+    private void dispatchSelectPhotos() {
+        Intent photoPickerIntent = new Intent(Intent.ACTION_GET_CONTENT);
+        photoPickerIntent.setType("image/*");
+        photoPickerIntent.addCategory(Intent.CATEGORY_OPENABLE);
+        photoPickerIntent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+        startActivityForResult(photoPickerIntent, REQUEST_SELECT_PHOTOS);
+    }
+
     private void showPanel(Panel panel) {
-        if (panel.equals(Panel.SCANNED)) {
-            capturePanel.setVisibility(View.GONE);
-            scannedPanel.setVisibility(View.VISIBLE);
-            progressPanel.setVisibility(View.GONE);
-        } else if (panel.equals(Panel.CAPTURE)) {
-            capturePanel.setVisibility(View.VISIBLE);
-            scannedPanel.setVisibility(View.GONE);
-            progressPanel.setVisibility(View.GONE);
-        } else if (panel.equals(Panel.PROGRESS)) {
-            capturePanel.setVisibility(View.GONE);
-            scannedPanel.setVisibility(View.GONE);
-            progressPanel.setVisibility(View.VISIBLE);
-        }
+        capturePanel.setVisibility(panel.equals(Panel.CAPTURE) ? View.VISIBLE : View.GONE);
+        scannedPanel.setVisibility(panel.equals(Panel.SCANNED) ? View.VISIBLE : View.GONE);
+        progressPanel.setVisibility(panel.equals(Panel.PROGRESS) ? View.VISIBLE : View.GONE);
+        batchPanel.setVisibility(panel.equals(Panel.BATCH) ? View.VISIBLE : View.GONE);
     }
 
     @Override
@@ -271,89 +528,166 @@ public class MainActivity extends AppCompatActivity implements RealmChangeListen
         switch (requestCode) {
             case REQUEST_SELECT_PHOTO:
                 if (resultCode == RESULT_OK) {
-                    setTitle("Saving...");
-                    final Uri imageUri = data.getData();
-                    try {
-                        final InputStream imageStream = getContentResolver().openInputStream(imageUri);
-                        final byte[] readBytes = new byte[PRIME_NUMBER_1000th];
-                        final ByteArrayOutputStream byteBuffer = new ByteArrayOutputStream();
-                        int readLength;
-                        while ((readLength = imageStream.read(readBytes)) != -1) {
-                            byteBuffer.write(readBytes, 0, readLength);
-                        }
-                        cleanUpCurrentLabelScanIfNeeded();
-                        byte[] imageData = byteBuffer.toByteArray();
-                        if (imageData.length > IMAGE_LIMIT) {
-                            BitmapFactory.Options options = new BitmapFactory.Options();
-                            options.inJustDecodeBounds = true;
-                            BitmapFactory.decodeByteArray(imageData, 0, imageData.length, options);
-                            int outWidth = options.outWidth;
-                            int outHeight = options.outHeight;
-                            int inSampleSize = 1;
-                            while (outWidth > 1600 || outHeight > 1600) {
-                                inSampleSize *= 2;
-                                outWidth /= 2;
-                                outHeight /= 2;
-                            }
-                            options = new BitmapFactory.Options();
-                            options.inSampleSize = inSampleSize;
-                            final Bitmap bitmap = BitmapFactory.decodeByteArray(imageData, 0, imageData.length, options);
-                            byteBuffer.reset();
-                            bitmap.compress(Bitmap.CompressFormat.JPEG, 80, byteBuffer);
-                            imageData = byteBuffer.toByteArray();
-                        }
-                        uploadImage(imageData);
-                    } catch (FileNotFoundException e) {
-                        e.printStackTrace();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    } finally {
-                        showPanel(Panel.PROGRESS);
-                        setTitle("Uploading...");
-                    }
+                    imageIngestor.ingestUri(data.getData(), startIngest(), ingestCallback);
                 }
                 break;
             case REQUEST_IMAGE_CAPTURE:
                 if (resultCode == RESULT_OK && currentPhotoPath != null) {
-                    setTitle("Saving...");
-                    BitmapFactory.Options options = new BitmapFactory.Options();
-                    options.inJustDecodeBounds = true;
-                    BitmapFactory.decodeFile(currentPhotoPath, options);
-                    int outWidth = options.outWidth;
-                    int outHeight = options.outHeight;
-                    int inSampleSize = 1;
-                    while (outWidth > 1600 || outHeight > 1600) {
-                        inSampleSize *= 2;
-                        outWidth /= 2;
-                        outHeight /= 2;
+                    imageIngestor.ingestFile(currentPhotoPath, startIngest(), ingestCallback);
+                }
+                break;
+            case REQUEST_SELECT_PHOTOS:
+                if (resultCode == RESULT_OK) {
+                    final List<Uri> imageUris = selectedUris(data);
+                    if (!imageUris.isEmpty()) {
+                        cleanUpCurrentLabelScanIfNeeded();
+                        cleanUpBatchIfNeeded();
+                        imageIngestor.ingestUris(imageUris, startIngest(), batchIngestCallback);
                     }
-                    options = new BitmapFactory.Options();
-                    options.inSampleSize = inSampleSize;
-                    Bitmap bitmap = BitmapFactory.decodeFile(currentPhotoPath, options);
-                    final ByteArrayOutputStream byteBuffer = new ByteArrayOutputStream();
-                    bitmap.compress(Bitmap.CompressFormat.JPEG, 80, byteBuffer);
-                    byte[] imageData = byteBuffer.toByteArray();
-                    uploadImage(imageData);
-                    showPanel(Panel.PROGRESS);
-                    setTitle("Uploading...");
                 }
                 break;
         }
     }
 
-    private void uploadImage(byte[] imageData) {
-        realm.beginTransaction();
-        currentScan = realm.createObject(Scan.class);
-        currentScan.setStatus(StatusLiteral.UPLOADING);
-        currentScan.setImageData(imageData);
-        realm.commitTransaction();
-        currentScan.addChangeListener(MainActivity.this);
+    private static List<Uri> selectedUris(Intent data) {
+        final List<Uri> imageUris = new ArrayList<>();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && data.getClipData() != null) {
+            final ClipData clipData = data.getClipData();
+            for (int i = 0; i < clipData.getItemCount(); i++) {
+                imageUris.add(clipData.getItemAt(i).getUri());
+            }
+        } else if (data.getData() != null) {
+            imageUris.add(data.getData());
+        }
+        return imageUris;
+    }
+
+    private CancellationSignal startIngest() {
+        cancelIngestIfNeeded();
+        ingestCancellationSignal = new CancellationSignal();
+        setTitle("Saving...");
+        showPanel(Panel.PROGRESS);
+        return ingestCancellationSignal;
+    }
+
+    private void cancelIngestIfNeeded() {
+        if (ingestCancellationSignal != null) {
+            ingestCancellationSignal.cancel();
+            ingestCancellationSignal = null;
+        }
+    }
+
+    private void uploadImage(final IngestedImage image) {
+        if (scanQueueFlusher.shouldQueue()) {
+            scanQueue.add(Collections.singletonList(image));
+            setTitle("Queued for Upload");
+            showPanel(Panel.CAPTURE);
+            return;
+        }
+        final String scanId = UUID.randomUUID().toString();
+        final CachedResult cachedResult = image.cachedResult;
+        pendingScanId = scanId;
+        scanWriteScheduler.create(scanId, image, cachedResult, CHUNKED_UPLOAD, new ScanWriteScheduler.Callback() {
+            @Override
+            public void onWritten() {
+                if (cachedResult == null && CHUNKED_UPLOAD) {
+                    chunkedUploader.upload(scanId);
+                }
+                if (!scanId.equals(pendingScanId)) {
+                    // Moved on while it was being written, the scan carries on in the history.
+                    return;
+                }
+                pendingScanId = null;
+                currentScan = findScan(scanId);
+                currentScan.addChangeListener(MainActivity.this);
+                if (cachedResult != null) {
+                    showScanResults(currentScan);
+                    setTitle(StatusLiteral.COMPLETED);
+                    invalidateOptionsMenu();
+                }
+            }
+
+            @Override
+            public void onFailed(Throwable error) {
+                if (cachedResult == null && CHUNKED_UPLOAD) {
+                    blobStore.unpin(image.imageHash);
+                }
+                if (scanId.equals(pendingScanId)) {
+                    pendingScanId = null;
+                    setTitle("Failed to Process");
+                    showPanel(Panel.CAPTURE);
+                }
+            }
+        });
+
+        if (cachedResult != null || !CHUNKED_UPLOAD) {
+            // Seen this image before, or its bytes go out with the scan: nothing reads the blob for uploading.
+            blobStore.unpin(image.imageHash);
+        }
+        setTitle(cachedResult != null ? "Saving..." : "Uploading...");
+    }
+
+    private void uploadBatch(List<IngestedImage> images) {
+        final List<String> scanIds = new ArrayList<>(images.size());
+        final List<String> uploadScanIds = new ArrayList<>(images.size());
+        final List<String> uploadImageHashes = new ArrayList<>(images.size());
+        final ScanWriteScheduler.Callback batchWritten = new ScanWriteScheduler.Callback() {
+            @Override
+            public void onWritten() {
+                onBatchWritten(scanIds, uploadScanIds);
+            }
+
+            @Override
+            public void onFailed(Throwable error) {
+                for (String imageHash : uploadImageHashes) {
+                    blobStore.unpin(imageHash);
+                }
+                setTitle("Failed to Process");
+                showPanel(Panel.CAPTURE);
+            }
+        };
+        // Batches always upload in chunks: their bytes were left in the blob store rather than kept in memory.
+        // All creates are scheduled back to back, so the whole batch is committed in a single transaction.
+        for (int i = 0; i < images.size(); i++) {
+            final IngestedImage image = images.get(i);
+            final String scanId = UUID.randomUUID().toString();
+            final CachedResult cachedResult = image.cachedResult;
+            scanIds.add(scanId);
+            if (cachedResult == null) {
+                uploadScanIds.add(scanId);
+                uploadImageHashes.add(image.imageHash);
+            } else {
+                blobStore.unpin(image.imageHash);
+            }
+            final boolean last = i == images.size() - 1;
+            scanWriteScheduler.create(scanId, image, cachedResult, true, last ? batchWritten : null);
+        }
+    }
+
+    private void onBatchWritten(List<String> scanIds, List<String> uploadScanIds) {
+        final List<Scan> scans = new ArrayList<>(scanIds.size());
+        for (String scanId : scanIds) {
+            final Scan scan = findScan(scanId);
+            if (scan != null) {
+                scans.add(scan);
+            }
+        }
+        for (String scanId : uploadScanIds) {
+            chunkedUploader.upload(scanId);
+        }
+        batchQueueAdapter.setScans(scans);
+        invalidateOptionsMenu();
+    }
+
+    private Scan findScan(String scanId) {
+        return realm.where(Scan.class).equalTo("scanId", scanId).findFirst();
     }
 
     private void showCommandsDialog() {
         final CharSequence[] items = {
                 "Take with Camera",
-                "Choose from Library"
+                "Choose from Library",
+                "Batch from Library"
         };
         final AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setItems(items, new DialogInterface.OnClickListener() {
@@ -366,6 +700,9 @@ public class MainActivity extends AppCompatActivity implements RealmChangeListen
                     case 1:
                         dispatchSelectPhoto();
                         break;
+                    case 2:
+                        dispatchSelectPhotos();
+                        break;
                 }
             }
         });
@@ -379,58 +716,109 @@ public class MainActivity extends AppCompatActivity implements RealmChangeListen
         return image;
     }
 
+    private void showScanResults(Scan scan) {
+        showScanResults(scan, true, true, true);
+    }
+
+    /**
+     * Shows the scanned panel and re-renders only the result sections that are flagged as changed.
+     */
+    private void showScanResults(Scan scan, boolean textChanged, boolean classificationChanged, boolean facesChanged) {
+        showPanel(Panel.SCANNED);
+        final String scanId = scan.getScanId();
+        if (!scanId.equals(displayedImageKey)) {
+            displayedImageKey = scanId;
+            image.setImageDrawable(null);
+            int targetWidth = image.getWidth();
+            if (targetWidth == 0) {
+                targetWidth = getResources().getDisplayMetrics().widthPixels;
+            }
+            scanImageLoader.load(scanId, scan.getImageHash(), targetWidth, 0, imageLoaderCallback);
+        }
+
+        if (textChanged) {
+            showResultSection(textScanResultView, ResultFormatter.text(scan));
+        }
+        if (classificationChanged) {
+            showResultSection(classificationResultView, ResultFormatter.classification(scan));
+        }
+        if (facesChanged) {
+            showResultSection(faceDetectionResultView, ResultFormatter.faceDetection(scan));
+        }
+    }
+
+    private static void showResultSection(TextView section, CharSequence result) {
+        if (result == null || result.length() == 0) {
+            section.setVisibility(View.GONE);
+            section.setText(null);
+        } else {
+            section.setText(result);
+            section.setVisibility(View.VISIBLE);
+        }
+    }
+
+    private void clearResultSections() {
+        showResultSection(textScanResultView, null);
+        showResultSection(classificationResultView, null);
+        showResultSection(faceDetectionResultView, null);
+    }
+
     @Override
-    public void onChange(Scan scan) {
+    public void onChange(Scan scan, ObjectChangeSet changeSet) {
+        if (changeSet != null && changeSet.isDeleted()) {
+            return;
+        }
+        final boolean statusChanged = Scans.isStatusChanged(changeSet);
+        final boolean textChanged = Scans.isTextChanged(changeSet);
+        final boolean classificationChanged = Scans.isClassificationChanged(changeSet);
+        final boolean facesChanged = Scans.isFaceDetectionChanged(changeSet);
+        if (!statusChanged && !textChanged && !classificationChanged && !facesChanged) {
+            // Nothing visible changed, e.g. a chunk of the payload was committed.
+            return;
+        }
+
         final String status = scan.getStatus();
-        if (status.equals(StatusLiteral.FAILED)) {
+        if (statusChanged && status.equals(StatusLiteral.FAILED)) {
+            if (ScanRetryScheduler.willRetry(scan)) {
+                // Keep listening, the scan comes back once it has been retried.
+                setTitle("Failed, Retrying...");
+                return;
+            }
             setTitle("Failed to Process");
             cleanUpCurrentLabelScanIfNeeded();
             showPanel(Panel.CAPTURE);
-        } else if (status.equals(StatusLiteral.CLASSIFICATION_RESULT_READY) ||
-                status.equals(StatusLiteral.TEXTSCAN_RESULT_READY) ||
-                status.equals(StatusLiteral.FACE_DETECTION_RESULT_READY)) {
-            showPanel(Panel.SCANNED);
-            final byte[] imageData = scan.getImageData();
-            final Bitmap bitmap = BitmapFactory.decodeByteArray(imageData, 0, imageData.length);
-            image.setImageBitmap(bitmap);
-
-            final String textScanResult = scan.getTextScanResult();
-            final String classificationResult = scan.getClassificationResult();
-            final String faceDetectionResult = scan.getFaceDetectionResult();
-
-            StringBuilder stringBuilder = new StringBuilder();
-            boolean shouldAppendNewLine = false;
-            if (textScanResult != null) {
-                stringBuilder.append(textScanResult);
-                shouldAppendNewLine = true;
-            }
-            if (classificationResult != null) {
-                if (shouldAppendNewLine) {
-                    stringBuilder.append("\n\n");
-                }
-                stringBuilder.append(classificationResult);
-                shouldAppendNewLine = true;
-            }
-            if (faceDetectionResult != null) {
-                if (shouldAppendNewLine) {
-                    stringBuilder.append("\n\n");
-                }
-                stringBuilder.append(faceDetectionResult);
-            }
-            description.setText(stringBuilder.toString());
-            if (textScanResult != null && classificationResult != null && faceDetectionResult != null) {
-                realm.beginTransaction();
-                scan.setStatus(StatusLiteral.COMPLETED);
-                realm.commitTransaction();
+            return;
+        }
+
+        if (textChanged || classificationChanged || facesChanged) {
+            showScanResults(scan, textChanged, classificationChanged, facesChanged);
+            if (Scans.hasAllResults(scan)) {
+                completeScan(scan);
+                invalidateOptionsMenu();
             }
-        } else {
+        }
+        // A server in aggregation mode delivers all results and the Completed status in a single change.
+        if (statusChanged &&
+                !status.equals(StatusLiteral.CLASSIFICATION_RESULT_READY) &&
+                !status.equals(StatusLiteral.TEXTSCAN_RESULT_READY) &&
+                !status.equals(StatusLiteral.FACE_DETECTION_RESULT_READY)) {
             setTitle(status);
         }
-        invalidateOptionsMenu();
+    }
+
+    private void completeScan(Scan scan) {
+        if (!scan.getStatus().equals(StatusLiteral.COMPLETED)) {
+            scanWriteScheduler.setStatus(scan.getScanId(), StatusLiteral.COMPLETED);
+            resultCache.put(scan.getScanId());
+        } else if (!scan.isFromCache()) {
+            // Completed by the server, which may already have stripped the payload.
+            resultCache.put(scan.getScanId());
+        }
     }
 
     @Override
-    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions,
+                                           @NonNull int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         if (requestCode == REQUEST_PERMISSION_WRITE) {
             if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
@@ -442,15 +830,6 @@ public class MainActivity extends AppCompatActivity implements RealmChangeListen
     }
 
     private enum Panel {
-        CAPTURE, SCANNED, PROGRESS
-    }
-
-    private class StatusLiteral {
-        public static final String UPLOADING = "Uploading";
-        public static final String FAILED = "Failed";
-        public static final String CLASSIFICATION_RESULT_READY = "ClassificationResultReady";
-        public static final String TEXTSCAN_RESULT_READY = "TextScanResultReady";
-        public static final String FACE_DETECTION_RESULT_READY = "FaceDetectionResultReady";
-        public static final String COMPLETED = "Completed";
+        CAPTURE, SCANNED, PROGRESS, BATCH
     }
 }
@@ -0,0 +1,50 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.realm.scanner;
+
+import android.app.ActivityManager;
+import android.os.Build;
+
+/**
+ * Splits the heap the app may use, as given by its memory class, between the bitmap memory cache of the
+ * {@link ScanImageLoader} and the {@link BitmapPool}. Low-RAM devices get half the share.
+ */
+class MemoryBudget {
+    private static final int IMAGE_CACHE_FRACTION = 8;
+    private static final int BITMAP_POOL_FRACTION = 8;
+    private static final int LOW_RAM_DIVISOR = 2;
+
+    final int memoryClassBytes;
+    final boolean lowRam;
+    final int imageCacheBytes;
+    final int bitmapPoolBytes;
+
+    MemoryBudget(ActivityManager activityManager) {
+        this.memoryClassBytes = activityManager.getMemoryClass() * 1024 * 1024;
+        this.lowRam = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && activityManager.isLowRamDevice();
+        final int divisor = lowRam ? LOW_RAM_DIVISOR : 1;
+        this.imageCacheBytes = memoryClassBytes / IMAGE_CACHE_FRACTION / divisor;
+        this.bitmapPoolBytes = memoryClassBytes / BITMAP_POOL_FRACTION / divisor;
+    }
+
+    @Override
+    public String toString() {
+        return "memory class " + (memoryClassBytes / 1024 / 1024) + "MB" + (lowRam ? " (low RAM)" : "")
+                + ", image cache " + (imageCacheBytes / 1024) + "KB, bitmap pool " + (bitmapPoolBytes / 1024) + "KB";
+    }
+}
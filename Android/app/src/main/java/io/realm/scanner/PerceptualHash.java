@@ -0,0 +1,47 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import android.graphics.Bitmap;
+
+import io.realm.scanner.core.Hashes;
+
+/**
+ * 64 bit difference hash ("dHash") of a {@link Bitmap}, see {@link Hashes#dHash(int[])}.
+ */
+class PerceptualHash {
+    private PerceptualHash() {
+    }
+
+    static long of(Bitmap bitmap) {
+        final int width = Hashes.DHASH_WIDTH;
+        final int height = Hashes.DHASH_HEIGHT;
+        final Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        final int[] pixels = new int[width * height];
+        scaled.getPixels(pixels, 0, width, 0, 0, width, height);
+        if (scaled != bitmap) {
+            scaled.recycle();
+        }
+        return Hashes.dHash(pixels);
+    }
+
+    static int distance(long lhs, long rhs) {
+        return Hashes.distance(lhs, rhs);
+    }
+}
@@ -0,0 +1,48 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.realm.scanner;
+
+import android.util.Log;
+
+import io.realm.CompactOnLaunchCallback;
+
+/**
+ * Compacts a Realm file when it is opened for the first time in the process, once it is larger than
+ * {@link #MIN_BYTES} and less than half of it is in use, to hand the space freed by stripped images and evicted cache
+ * entries back to the file system.
+ */
+class RealmCompaction implements CompactOnLaunchCallback {
+    private static final String TAG = "RealmCompaction";
+    private static final long MIN_BYTES = 16 * 1024 * 1024;
+    private static final double MAX_USED_FRACTION = 0.5;
+
+    private final String name;
+
+    RealmCompaction(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public boolean shouldCompact(long totalBytes, long usedBytes) {
+        final boolean compact = totalBytes > MIN_BYTES && usedBytes < totalBytes * MAX_USED_FRACTION;
+        if (compact) {
+            Log.i(TAG, "Compacting " + name + ": " + usedBytes + " of " + totalBytes + " bytes in use");
+        }
+        return compact;
+    }
+}
@@ -0,0 +1,249 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.realm.OrderedRealmCollectionSnapshot;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmResults;
+import io.realm.Sort;
+import io.realm.scanner.model.CachedResult;
+import io.realm.scanner.model.ResultCacheModule;
+import io.realm.scanner.model.Scan;
+
+/**
+ * Local cache of analysis results, so re-scanning an image that has been seen before skips the upload and the
+ * server round trip entirely.
+ * <p>
+ * Entries are found by the exact SHA-256 of the encoded image first and, failing that, by the closest
+ * {@link PerceptualHash} within {@link #MAX_PERCEPTUAL_DISTANCE} bits. They expire after a TTL, and the least
+ * recently used ones are dropped once the cache holds more than its maximum number of entries.
+ * <p>
+ * Every call opens the cache Realm and writes to it, so none of them may run on the main thread. The asynchronous
+ * variants run on a background thread of their own and call back on the main thread.
+ */
+class ResultCache {
+    private static final String TAG = "ResultCache";
+    private static final String REALM_NAME = "result_cache.realm";
+    private static final int MAX_PERCEPTUAL_DISTANCE = 4;
+
+    interface LookupCallback {
+        void onLookedUp(List<IngestedImage> images);
+    }
+
+    private final RealmConfiguration configuration;
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong perceptualHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    ResultCache(int maxEntries, long ttlMillis) {
+        this.configuration = new RealmConfiguration.Builder()
+                .name(REALM_NAME)
+                .modules(new ResultCacheModule())
+                .compactOnLaunch(new RealmCompaction(REALM_NAME))
+                .deleteRealmIfMigrationNeeded()
+                .build();
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return an unmanaged copy of the cached results for the image, or {@code null} on a miss.
+     */
+    CachedResult lookup(String imageHash, long perceptualHash) {
+        final long now = System.currentTimeMillis();
+        final Realm realm = Realm.getInstance(configuration);
+        try {
+            final RealmResults<CachedResult> live = realm.where(CachedResult.class)
+                    .greaterThan("createdAt", now - ttlMillis)
+                    .findAll();
+
+            CachedResult match = live.where().equalTo("imageHash", imageHash).findFirst();
+            if (match != null) {
+                exactHits.incrementAndGet();
+            } else {
+                int bestDistance = MAX_PERCEPTUAL_DISTANCE + 1;
+                for (CachedResult candidate : live) {
+                    final int distance = PerceptualHash.distance(perceptualHash, candidate.getPerceptualHash());
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        match = candidate;
+                    }
+                }
+                if (match == null) {
+                    misses.incrementAndGet();
+                    Log.d(TAG, "Miss. " + getStats());
+                    return null;
+                }
+                perceptualHits.incrementAndGet();
+            }
+
+            realm.beginTransaction();
+            match.setLastUsedAt(now);
+            realm.commitTransaction();
+            Log.d(TAG, "Hit. " + getStats());
+            return realm.copyFromRealm(match);
+        } finally {
+            realm.close();
+        }
+    }
+
+    /**
+     * Looks the images up in the background, and hands them back with their {@link IngestedImage#cachedResult} set.
+     */
+    void lookup(final List<IngestedImage> images, final LookupCallback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<IngestedImage> looked = new ArrayList<>(images.size());
+                for (IngestedImage image : images) {
+                    looked.add(image.withCachedResult(lookup(image.imageHash, image.perceptualHash)));
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onLookedUp(looked);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Remembers the results of a scan whose three analyses have all arrived, reading the scan from the default
+     * Realm in the background.
+     */
+    void put(final String scanId) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Realm scanRealm = Realm.getDefaultInstance();
+                try {
+                    final Scan scan = scanRealm.where(Scan.class).equalTo("scanId", scanId).findFirst();
+                    if (scan != null && Scans.hasAllResults(scan)) {
+                        put(scanRealm, scan);
+                    }
+                } finally {
+                    scanRealm.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * @param scanRealm the Realm managing the scan, its typed results are copied out of it.
+     */
+    private void put(Realm scanRealm, Scan scan) {
+        if (scan.getImageHash() == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final Realm realm = Realm.getInstance(configuration);
+        try {
+            realm.beginTransaction();
+            final CachedResult result = new CachedResult();
+            result.setImageHash(scan.getImageHash());
+            result.setPerceptualHash(scan.getPerceptualHash());
+            result.setTextScanResult(scan.getTextScanResult());
+            result.setClassificationResult(scan.getClassificationResult());
+            result.setFaceDetectionResult(scan.getFaceDetectionResult());
+            if (scan.getText() != null) {
+                result.setText(scanRealm.copyFromRealm(scan.getText()));
+            }
+            if (scan.getClassification() != null) {
+                result.setClassification(scanRealm.copyFromRealm(scan.getClassification()));
+            }
+            if (scan.getFaceDetection() != null) {
+                result.setFaceDetection(scanRealm.copyFromRealm(scan.getFaceDetection()));
+            }
+            final CachedResult previous = realm.where(CachedResult.class)
+                    .equalTo("imageHash", scan.getImageHash())
+                    .findFirst();
+            if (previous != null) {
+                delete(previous);
+            }
+            result.setCreatedAt(now);
+            result.setLastUsedAt(now);
+            realm.copyToRealmOrUpdate(result);
+            evict(realm, now);
+            realm.commitTransaction();
+        } finally {
+            realm.close();
+        }
+    }
+
+    Stats getStats() {
+        return new Stats(exactHits.get(), perceptualHits.get(), misses.get());
+    }
+
+    private void evict(Realm realm, long now) {
+        final OrderedRealmCollectionSnapshot<CachedResult> expired = realm.where(CachedResult.class)
+                .lessThanOrEqualTo("createdAt", now - ttlMillis)
+                .findAll()
+                .createSnapshot();
+        for (CachedResult result : expired) {
+            delete(result);
+        }
+        final OrderedRealmCollectionSnapshot<CachedResult> byLastUse = realm.where(CachedResult.class)
+                .findAllSorted("lastUsedAt", Sort.ASCENDING)
+                .createSnapshot();
+        final int excess = byLastUse.size() - maxEntries;
+        for (int i = 0; i < excess; i++) {
+            delete(byLastUse.get(i));
+        }
+    }
+
+    private static void delete(CachedResult result) {
+        Scans.deleteResults(result.getText(), result.getClassification(), result.getFaceDetection());
+        result.deleteFromRealm();
+    }
+
+    static class Stats {
+        final long exactHits;
+        final long perceptualHits;
+        final long misses;
+
+        Stats(long exactHits, long perceptualHits, long misses) {
+            this.exactHits = exactHits;
+            this.perceptualHits = perceptualHits;
+            this.misses = misses;
+        }
+
+        @Override
+        public String toString() {
+            return "exact hits: " + exactHits + ", perceptual hits: " + perceptualHits + ", misses: " + misses;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+
+import io.realm.scanner.model.Classification;
+import io.realm.scanner.model.Face;
+import io.realm.scanner.model.FaceDetection;
+import io.realm.scanner.model.ImageClass;
+import io.realm.scanner.model.Scan;
+import io.realm.scanner.model.TextResult;
+
+/**
+ * Turns the results of a {@link Scan} into text for display. Typed results are formatted here; results from a server
+ * that only writes preformatted strings are shown as they are.
+ */
+class ResultFormatter {
+    private ResultFormatter() {
+    }
+
+    /**
+     * @return the text to show, or {@code null} if there is nothing to show.
+     */
+    static CharSequence text(Scan scan) {
+        final TextResult result = scan.getText();
+        if (result == null) {
+            return scan.getTextScanResult();
+        }
+        final String text = result.getText();
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        final SpannableStringBuilder builder = new SpannableStringBuilder();
+        appendHeading(builder, "Text Scan Result");
+        builder.append(text);
+        return builder;
+    }
+
+    static CharSequence classification(Scan scan) {
+        final Classification result = scan.getClassification();
+        if (result == null) {
+            return scan.getClassificationResult();
+        }
+        if (result.getClasses().isEmpty()) {
+            return null;
+        }
+        final SpannableStringBuilder builder = new SpannableStringBuilder();
+        appendHeading(builder, "Classification Result");
+        for (ImageClass imageClass : result.getClasses()) {
+            builder.append("Class: ").append(imageClass.getClassName()).append('\n');
+            builder.append("Score: ").append(String.valueOf(imageClass.getScore())).append('\n');
+            if (imageClass.getTypeHierarchy() != null) {
+                builder.append("Type: ").append(imageClass.getTypeHierarchy()).append('\n');
+            }
+            builder.append('\n');
+        }
+        return builder;
+    }
+
+    static CharSequence faceDetection(Scan scan) {
+        final FaceDetection result = scan.getFaceDetection();
+        if (result == null) {
+            return scan.getFaceDetectionResult();
+        }
+        if (result.getFaces().isEmpty()) {
+            return null;
+        }
+        final SpannableStringBuilder builder = new SpannableStringBuilder();
+        appendHeading(builder, "Face Detection Result");
+        builder.append("Number of faces detected: ").append(String.valueOf(result.getFaces().size())).append('\n');
+        for (Face face : result.getFaces()) {
+            builder.append("Gender: ").append(face.getGender()).append(", Age: ");
+            if (face.getAgeMax() > 0) {
+                builder.append(String.valueOf(face.getAgeMin())).append(" - ").append(String.valueOf(face.getAgeMax()));
+            } else {
+                builder.append(String.valueOf(face.getAgeMin())).append('+');
+            }
+            builder.append('\n');
+        }
+        return builder;
+    }
+
+    private static void appendHeading(SpannableStringBuilder builder, String heading) {
+        final int start = builder.length();
+        builder.append(heading);
+        builder.setSpan(new StyleSpan(Typeface.BOLD), start, builder.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        builder.append("\n\n");
+    }
+}
@@ -0,0 +1,182 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.realm.scanner;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import io.realm.RealmChangeListener;
+import io.realm.RealmResults;
+import io.realm.scanner.model.Classification;
+import io.realm.scanner.model.ImageClass;
+import io.realm.scanner.model.Scan;
+
+/**
+ * Every scan, newest first, from an asynchronous query that never blocks the main thread.
+ * <p>
+ * The list grows a page at a time as it is scrolled towards its end. Rows only read the fields they show, and
+ * thumbnails are decoded through the {@link ScanImageLoader} for the rows on screen only: a row that is scrolled
+ * away cancels its decode, so flinging through thousands of scans doesn't queue up thousands of decodes.
+ */
+class ScanHistoryAdapter extends BaseAdapter implements AbsListView.RecyclerListener {
+    static final int PAGE_SIZE = 50;
+
+    private final Context context;
+    private final LayoutInflater inflater;
+    private final ScanImageLoader imageLoader;
+    private final RealmResults<Scan> scans;
+    private final RealmChangeListener<RealmResults<Scan>> scansListener =
+            new RealmChangeListener<RealmResults<Scan>>() {
+                @Override
+                public void onChange(RealmResults<Scan> scans) {
+                    notifyDataSetChanged();
+                }
+            };
+    private int limit = PAGE_SIZE;
+
+    ScanHistoryAdapter(Context context, ScanImageLoader imageLoader, RealmResults<Scan> scans) {
+        this.context = context;
+        this.inflater = LayoutInflater.from(context);
+        this.imageLoader = imageLoader;
+        this.scans = scans;
+        scans.addChangeListener(scansListener);
+    }
+
+    /**
+     * Shows another page if there are more scans than are shown.
+     */
+    void loadMore() {
+        if (scans.isLoaded() && limit < scans.size()) {
+            limit += PAGE_SIZE;
+            notifyDataSetChanged();
+        }
+    }
+
+    void close() {
+        scans.removeChangeListener(scansListener);
+    }
+
+    @Override
+    public int getCount() {
+        return scans.isLoaded() && scans.isValid() ? Math.min(scans.size(), limit) : 0;
+    }
+
+    @Override
+    public Scan getItem(int position) {
+        return scans.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        final View view;
+        final RowHolder holder;
+        if (convertView != null) {
+            view = convertView;
+            holder = (RowHolder) view.getTag();
+        } else {
+            view = inflater.inflate(R.layout.item_scan_history, parent, false);
+            holder = new RowHolder(view);
+            view.setTag(holder);
+        }
+
+        final Scan scan = getItem(position);
+        holder.title.setText(DateUtils.formatDateTime(context, scan.getCreatedAt(),
+                DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME | DateUtils.FORMAT_ABBREV_MONTH));
+        holder.subtitle.setText(summary(scan));
+        holder.bind(scan);
+        return view;
+    }
+
+    @Override
+    public void onMovedToScrapHeap(View view) {
+        ((RowHolder) view.getTag()).unbind();
+    }
+
+    /**
+     * The best class of a completed scan, or its status.
+     */
+    private static String summary(Scan scan) {
+        final Classification classification = scan.getClassification();
+        if (classification != null) {
+            ImageClass best = null;
+            for (ImageClass imageClass : classification.getClasses()) {
+                if (best == null || imageClass.getScore() > best.getScore()) {
+                    best = imageClass;
+                }
+            }
+            if (best != null) {
+                return best.getClassName();
+            }
+        }
+        return scan.getStatus();
+    }
+
+    private class RowHolder implements ScanImageLoader.Callback {
+        final ImageView thumbnail;
+        final TextView title;
+        final TextView subtitle;
+        String thumbnailKey;
+
+        RowHolder(View view) {
+            thumbnail = (ImageView) view.findViewById(R.id.history_thumbnail);
+            title = (TextView) view.findViewById(R.id.history_title);
+            subtitle = (TextView) view.findViewById(R.id.history_subtitle);
+        }
+
+        void bind(Scan scan) {
+            final String key = ScanImageLoader.thumbnailKey(scan.getScanId());
+            if (key.equals(thumbnailKey)) {
+                return;
+            }
+            unbind();
+            if (scan.getThumbnail() != null) {
+                // Scans from devices that don't write thumbnails keep the placeholder.
+                thumbnailKey = key;
+                imageLoader.loadThumbnail(scan.getScanId(), this);
+            }
+        }
+
+        void unbind() {
+            if (thumbnailKey != null) {
+                imageLoader.cancel(thumbnailKey, this);
+                thumbnailKey = null;
+            }
+            thumbnail.setImageDrawable(null);
+        }
+
+        @Override
+        public void onBitmapLoaded(String key, Bitmap bitmap) {
+            if (key.equals(thumbnailKey)) {
+                thumbnail.setImageBitmap(bitmap);
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.realm.Realm;
+import io.realm.scanner.core.SampleSize;
+import io.realm.scanner.model.ImageChunk;
+import io.realm.scanner.model.ImagePayload;
+import io.realm.scanner.model.Thumbnail;
+
+/**
+ * Decodes scan images off the main thread, sampled down to the size they are displayed at, and keeps the decoded
+ * bitmaps in a memory cache keyed by scan id.
+ * <p>
+ * The cache is sized by the {@link MemoryBudget} and shrinks on {@link #trimMemory(int)}. Images are decoded in a
+ * configurable, typically 16 bit, bitmap config into bitmaps reused from the {@link BitmapPool} where possible.
+ * Requests for a key that is already being decoded are attached to the running decode, so repeated result
+ * notifications for the same scan cost at most one decode. A request that nobody waits for any more can be
+ * cancelled, and is dropped if its decode hasn't started yet, so rows scrolled past in a list never reach the
+ * decoder. All methods must be called from the main thread, and callbacks are delivered on it.
+ */
+class ScanImageLoader {
+    private static final String TAG = "ScanImageLoader";
+    private static final String THUMBNAIL_KEY_PREFIX = "thumbnail:";
+
+    interface Callback {
+        void onBitmapLoaded(String key, Bitmap bitmap);
+    }
+
+    private final BlobStore blobStore;
+    private final BitmapPool bitmapPool;
+    private final Bitmap.Config config;
+    private final LruCache<String, Bitmap> cache;
+    private final Map<String, List<Callback>> pending = new HashMap<>();
+    private final Map<String, Future<?>> tasks = new HashMap<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    ScanImageLoader(BlobStore blobStore, BitmapPool bitmapPool, Bitmap.Config config, int maxBytes) {
+        this.blobStore = blobStore;
+        this.bitmapPool = bitmapPool;
+        this.config = config;
+        this.cache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return BitmapPool.sizeOf(bitmap);
+            }
+        };
+    }
+
+    /**
+     * Drops the bitmap from the cache and hands it to the {@link BitmapPool}, so it must not be displayed any more.
+     */
+    void remove(String key) {
+        bitmapPool.put(cache.remove(key));
+    }
+
+    /**
+     * Shrinks the cache for a {@link ComponentCallbacks2} trim level: emptied once memory is running low or the UI
+     * is hidden, halved on the first warning. Evicted bitmaps may still be on screen, so they are left to the garbage
+     * collector rather than pooled.
+     */
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            cache.trimToSize(cache.size() / 2);
+        }
+    }
+
+    /**
+     * Decodes the image of a scan so that it is at least {@code targetWidth} by {@code targetHeight} pixels. Either
+     * dimension may be 0 when it doesn't constrain the sampling.
+     */
+    void load(final String key, final String imageHash, final int targetWidth, final int targetHeight,
+              Callback callback) {
+        enqueue(key, callback, new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return decode(key, imageHash, targetWidth, targetHeight);
+            }
+        });
+    }
+
+    static String thumbnailKey(String scanId) {
+        return THUMBNAIL_KEY_PREFIX + scanId;
+    }
+
+    /**
+     * Decodes the precomputed {@link Thumbnail} of a scan, cached under {@link #thumbnailKey(String)}.
+     */
+    void loadThumbnail(final String scanId, Callback callback) {
+        enqueue(thumbnailKey(scanId), callback, new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return decodeThumbnail(scanId);
+            }
+        });
+    }
+
+    /**
+     * Stops delivering {@code key} to {@code callback}. Once no callback is left the decode is dropped, unless it is
+     * already running, in which case its bitmap still ends up in the cache.
+     */
+    void cancel(String key, Callback callback) {
+        final List<Callback> callbacks = pending.get(key);
+        if (callbacks == null) {
+            return;
+        }
+        callbacks.remove(callback);
+        if (callbacks.isEmpty()) {
+            pending.remove(key);
+            final Future<?> task = tasks.remove(key);
+            if (task != null) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    private void enqueue(final String key, Callback callback, final Callable<Bitmap> decoder) {
+        final Bitmap cached = cache.get(key);
+        if (cached != null) {
+            callback.onBitmapLoaded(key, cached);
+            return;
+        }
+        List<Callback> callbacks = pending.get(key);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+        callbacks = new ArrayList<>();
+        callbacks.add(callback);
+        pending.put(key, callbacks);
+
+        tasks.put(key, executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap decoded;
+                try {
+                    decoded = decoder.call();
+                } catch (Exception e) {
+                    Log.e(TAG, "Unable to decode " + key, e);
+                    decoded = null;
+                }
+                final Bitmap bitmap = decoded;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        tasks.remove(key);
+                        final List<Callback> callbacks = pending.remove(key);
+                        if (bitmap == null) {
+                            return;
+                        }
+                        cache.put(key, bitmap);
+                        if (callbacks != null) {
+                            for (Callback callback : callbacks) {
+                                callback.onBitmapLoaded(key, bitmap);
+                            }
+                        }
+                    }
+                });
+            }
+        }));
+    }
+
+    private Bitmap decode(String scanId, String imageHash, int targetWidth, int targetHeight) {
+        try {
+            final File imageFile = blobStore.get(imageHash);
+            final byte[] imageData;
+            if (imageFile != null) {
+                imageData = null;
+            } else {
+                // Not captured on this device, or evicted since: fall back to the uploaded payload.
+                imageData = readPayload(scanId);
+                if (imageData == null) {
+                    // Stripped by the server once the scan was done, the thumbnail is all that is left.
+                    return decodeThumbnail(scanId);
+                }
+            }
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            decode(imageFile, imageData, options);
+            options.inSampleSize = SampleSize.toCover(options.outWidth, options.outHeight, targetWidth, targetHeight);
+            options.inJustDecodeBounds = false;
+            return decodeReusing(imageFile, imageData, options,
+                    BitmapPool.sampled(options.outWidth, options.inSampleSize),
+                    BitmapPool.sampled(options.outHeight, options.inSampleSize));
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "Unable to decode image for scan " + scanId, e);
+            return null;
+        }
+    }
+
+    private Bitmap decodeThumbnail(String scanId) {
+        final byte[] data;
+        final int width;
+        final int height;
+        final Realm realm = Realm.getDefaultInstance();
+        try {
+            final Thumbnail thumbnail = realm.where(Thumbnail.class).equalTo("scanId", scanId).findFirst();
+            if (thumbnail == null || thumbnail.getData() == null) {
+                return null;
+            }
+            data = thumbnail.getData();
+            width = thumbnail.getWidth();
+            height = thumbnail.getHeight();
+        } finally {
+            realm.close();
+        }
+        try {
+            return decodeReusing(null, data, new BitmapFactory.Options(), width, height);
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "Unable to decode thumbnail for scan " + scanId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes into a pooled bitmap if there is one for a {@code width} by {@code height} result, or into a new one
+     * if there isn't or it is turned down.
+     */
+    private Bitmap decodeReusing(File imageFile, byte[] imageData, BitmapFactory.Options options, int width,
+                                 int height) {
+        options.inPreferredConfig = config;
+        bitmapPool.prepare(options, width, height);
+        try {
+            return decode(imageFile, imageData, options);
+        } catch (IllegalArgumentException e) {
+            bitmapPool.releaseReuse(options);
+            return decode(imageFile, imageData, options);
+        }
+    }
+
+    private static Bitmap decode(File imageFile, byte[] imageData, BitmapFactory.Options options) {
+        return imageFile != null
+                ? BitmapFactory.decodeFile(imageFile.getPath(), options)
+                : BitmapFactory.decodeByteArray(imageData, 0, imageData.length, options);
+    }
+
+    private static byte[] readPayload(String scanId) {
+        final Realm realm = Realm.getDefaultInstance();
+        try {
+            final ImagePayload payload = realm.where(ImagePayload.class).equalTo("scanId", scanId).findFirst();
+            if (payload == null) {
+                return null;
+            }
+            if (payload.getChunkCount() == 0) {
+                return payload.getImageData();
+            }
+            if (payload.getChunks().size() < payload.getChunkCount()) {
+                return null;
+            }
+            final ByteArrayOutputStream imageData = new ByteArrayOutputStream();
+            for (ImageChunk chunk : payload.getChunks().sort("index")) {
+                final byte[] data = chunk.getData();
+                imageData.write(data, 0, data.length);
+            }
+            return imageData.toByteArray();
+        } finally {
+            realm.close();
+        }
+    }
+}
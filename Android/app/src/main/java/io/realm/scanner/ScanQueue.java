@@ -0,0 +1,202 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.realm.scanner;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmResults;
+import io.realm.Sort;
+import io.realm.scanner.model.QueuedScan;
+import io.realm.scanner.model.ScanQueueModule;
+
+/**
+ * Local, unsynced queue of scans that were captured while there was no synced Realm to write them to, either
+ * because the Object Server couldn't be reached to log in or because the device is offline.
+ * <p>
+ * Queued scans keep their image pinned in the {@link BlobStore} and are moved into the synced Realm by the
+ * {@link ScanQueueFlusher}, oldest first. Unlike the result cache, this Realm is never deleted on a schema change:
+ * it may hold the only record of an image.
+ * <p>
+ * Every operation runs on a background thread of its own, in the order it was requested, so a scan that has been
+ * added is always seen by a later {@link #peek(int, PeekCallback)}. Results are delivered on the main thread.
+ */
+class ScanQueue {
+    private static final String TAG = "ScanQueue";
+    private static final String REALM_NAME = "scan_queue.realm";
+
+    interface PeekCallback {
+        /**
+         * @param images the queued scans as images that can be created in the synced Realm, in the same order as
+         *               {@code scanIds}. Their bytes are only in the {@link BlobStore}, and they carry no trace.
+         */
+        void onPeeked(List<String> scanIds, List<IngestedImage> images);
+    }
+
+    private final RealmConfiguration configuration;
+    private final BlobStore blobStore;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    ScanQueue(BlobStore blobStore) {
+        this.configuration = new RealmConfiguration.Builder()
+                .name(REALM_NAME)
+                .modules(new ScanQueueModule())
+                .compactOnLaunch(new RealmCompaction(REALM_NAME))
+                .build();
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * Queues the images as new scans, all in one transaction.
+     */
+    void add(final List<IngestedImage> images) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long now = System.currentTimeMillis();
+                final Realm realm = Realm.getInstance(configuration);
+                try {
+                    realm.beginTransaction();
+                    for (IngestedImage image : images) {
+                        final QueuedScan queued = realm.createObject(QueuedScan.class, UUID.randomUUID().toString());
+                        queued.setImageHash(image.imageHash);
+                        queued.setPerceptualHash(image.perceptualHash);
+                        queued.setImageSize(image.size);
+                        queued.setImageWidth(image.width);
+                        queued.setImageHeight(image.height);
+                        if (image.thumbnail != null) {
+                            queued.setThumbnailData(image.thumbnail.data);
+                            queued.setThumbnailWidth(image.thumbnail.width);
+                            queued.setThumbnailHeight(image.thumbnail.height);
+                        }
+                        queued.setQueuedAt(now);
+                    }
+                    realm.commitTransaction();
+                } finally {
+                    realm.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads up to {@code max} of the oldest queued scans.
+     */
+    void peek(final int max, final PeekCallback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<String> scanIds = new ArrayList<>();
+                final List<IngestedImage> images = new ArrayList<>();
+                final Realm realm = Realm.getInstance(configuration);
+                try {
+                    final RealmResults<QueuedScan> queued = realm.where(QueuedScan.class)
+                            .findAllSorted("queuedAt", Sort.ASCENDING);
+                    for (int i = 0; i < queued.size() && i < max; i++) {
+                        scanIds.add(queued.get(i).getScanId());
+                        images.add(toImage(queued.get(i)));
+                    }
+                } finally {
+                    realm.close();
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onPeeked(scanIds, images);
+                    }
+                });
+            }
+        });
+    }
+
+    void remove(final List<String> scanIds) {
+        if (scanIds.isEmpty()) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                removeNow(scanIds);
+            }
+        });
+    }
+
+    /**
+     * Pins the images of the scans queued by an earlier run of the app again. Scans whose image has been evicted in
+     * the meantime can never be uploaded, and are dropped.
+     */
+    void repin() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                repinNow();
+            }
+        });
+    }
+
+    private void repinNow() {
+        final List<String> lost = new ArrayList<>();
+        final Realm realm = Realm.getInstance(configuration);
+        try {
+            for (QueuedScan queued : realm.where(QueuedScan.class).findAll()) {
+                if (!blobStore.pin(queued.getImageHash())) {
+                    lost.add(queued.getScanId());
+                }
+            }
+        } finally {
+            realm.close();
+        }
+        if (!lost.isEmpty()) {
+            Log.w(TAG, "Dropping " + lost.size() + " queued scans whose image was evicted");
+            removeNow(lost);
+        }
+    }
+
+    private void removeNow(List<String> scanIds) {
+        final Realm realm = Realm.getInstance(configuration);
+        try {
+            realm.beginTransaction();
+            realm.where(QueuedScan.class)
+                    .in("scanId", scanIds.toArray(new String[scanIds.size()]))
+                    .findAll()
+                    .deleteAllFromRealm();
+            realm.commitTransaction();
+        } finally {
+            realm.close();
+        }
+    }
+
+    private static IngestedImage toImage(QueuedScan queued) {
+        final ImageEncoder.Result thumbnail = queued.getThumbnailData() == null ? null
+                : new ImageEncoder.Result(queued.getThumbnailData(), Bitmap.CompressFormat.JPEG, 0,
+                queued.getThumbnailWidth(), queued.getThumbnailHeight(), 0, 0);
+        return new IngestedImage(null, queued.getImageHash(), queued.getPerceptualHash(), queued.getImageSize(),
+                queued.getImageWidth(), queued.getImageHeight(), thumbnail, null, null);
+    }
+}
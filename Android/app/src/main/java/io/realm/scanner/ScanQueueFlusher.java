@@ -0,0 +1,245 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.realm.scanner;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.realm.Realm;
+import io.realm.SyncConfiguration;
+import io.realm.SyncManager;
+import io.realm.SyncSession;
+import io.realm.scanner.model.CachedResult;
+import io.realm.scanner.model.Scan;
+
+/**
+ * Moves scans from the {@link ScanQueue} into the synced Realm once they can actually be uploaded: the device has a
+ * network connection, and the synced Realm is open with an active sync session.
+ * <p>
+ * Connectivity changes are watched through the system broadcast, and a session that is still connecting is polled
+ * until it is active. Queued scans are moved {@link #BATCH_SIZE} at a time, each batch created through the
+ * {@link ScanWriteScheduler} in a single transaction, and only leave the queue once that transaction has been
+ * committed. Images that have been scanned before are completed from the {@link ResultCache} at that point. The
+ * queue itself is read off the main thread, but the flusher must only be used from the main thread.
+ */
+class ScanQueueFlusher {
+    private static final String TAG = "ScanQueueFlusher";
+    static final int BATCH_SIZE = 10;
+    private static final long SESSION_POLL_MILLIS = 2000;
+
+    interface Listener {
+        /**
+         * Called whenever the device has come back online.
+         */
+        void onOnline();
+
+        void onFlushed(int count);
+    }
+
+    private final Context context;
+    private final ScanQueue queue;
+    private final BlobStore blobStore;
+    private final ResultCache resultCache;
+    private final Listener listener;
+    private final ConnectivityManager connectivityManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private Realm realm;
+    private SyncConfiguration configuration;
+    private ScanWriteScheduler scheduler;
+    private ChunkedUploader uploader;
+    private boolean started;
+    private boolean flushing;
+
+    private final BroadcastReceiver connectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (isOnline()) {
+                listener.onOnline();
+                flushIfPossible();
+            }
+        }
+    };
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushIfPossible();
+        }
+    };
+
+    ScanQueueFlusher(Context context, ScanQueue queue, BlobStore blobStore, ResultCache resultCache,
+                     Listener listener) {
+        this.context = context;
+        this.queue = queue;
+        this.blobStore = blobStore;
+        this.resultCache = resultCache;
+        this.listener = listener;
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    /**
+     * Starts watching connectivity. The connectivity broadcast is sticky, so this also checks the current state.
+     */
+    void start() {
+        context.registerReceiver(connectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        started = true;
+    }
+
+    void stop() {
+        if (started) {
+            context.unregisterReceiver(connectivityReceiver);
+            started = false;
+        }
+        mainHandler.removeCallbacks(flushRunnable);
+        realm = null;
+        scheduler = null;
+        uploader = null;
+    }
+
+    /**
+     * Hands over the synced Realm once it is open, the queue is flushed as soon as its session is active.
+     */
+    void attach(Realm realm, SyncConfiguration configuration, ScanWriteScheduler scheduler, ChunkedUploader uploader) {
+        this.realm = realm;
+        this.configuration = configuration;
+        this.scheduler = scheduler;
+        this.uploader = uploader;
+        flushIfPossible();
+    }
+
+    /**
+     * @return {@code true} if new scans should go to the queue rather than straight into the synced Realm.
+     */
+    boolean shouldQueue() {
+        return scheduler == null || !isOnline();
+    }
+
+    boolean isOnline() {
+        final NetworkInfo network = connectivityManager.getActiveNetworkInfo();
+        return network != null && network.isConnected();
+    }
+
+    private boolean isSessionActive() {
+        final SyncSession session = SyncManager.getSession(configuration);
+        return session.getState() == SyncSession.State.ACTIVE;
+    }
+
+    private void flushIfPossible() {
+        mainHandler.removeCallbacks(flushRunnable);
+        if (flushing || scheduler == null || realm.isClosed() || !isOnline()) {
+            return;
+        }
+        flushing = true;
+        queue.peek(BATCH_SIZE, new ScanQueue.PeekCallback() {
+            @Override
+            public void onPeeked(List<String> scanIds, List<IngestedImage> images) {
+                if (scheduler == null || realm.isClosed() || scanIds.isEmpty()) {
+                    flushing = false;
+                    return;
+                }
+                if (!isSessionActive()) {
+                    // Logged in, but not connected to the server yet.
+                    flushing = false;
+                    mainHandler.postDelayed(flushRunnable, SESSION_POLL_MILLIS);
+                    return;
+                }
+                flush(scanIds, images);
+            }
+        });
+    }
+
+    private void flush(final List<String> scanIds, List<IngestedImage> queued) {
+        final List<String> creates = new ArrayList<>(scanIds.size());
+        final List<IngestedImage> images = new ArrayList<>(scanIds.size());
+        for (int i = 0; i < scanIds.size(); i++) {
+            final String scanId = scanIds.get(i);
+            // Moved already by an earlier run that didn't get to remove it from the queue.
+            if (realm.where(Scan.class).equalTo("scanId", scanId).count() == 0) {
+                creates.add(scanId);
+                images.add(queued.get(i));
+            }
+        }
+        if (creates.isEmpty()) {
+            // The queue runs its operations in order, so the next peek no longer sees these.
+            queue.remove(scanIds);
+            flushing = false;
+            flushIfPossible();
+            return;
+        }
+
+        resultCache.lookup(images, new ResultCache.LookupCallback() {
+            @Override
+            public void onLookedUp(List<IngestedImage> images) {
+                if (scheduler == null || realm.isClosed()) {
+                    flushing = false;
+                    return;
+                }
+                create(scanIds, creates, images);
+            }
+        });
+    }
+
+    private void create(final List<String> scanIds, final List<String> creates, List<IngestedImage> images) {
+        final List<String> uploads = new ArrayList<>(creates.size());
+        final ScanWriteScheduler.Callback batchWritten = new ScanWriteScheduler.Callback() {
+            @Override
+            public void onWritten() {
+                flushing = false;
+                queue.remove(scanIds);
+                if (uploader != null) {
+                    for (String scanId : uploads) {
+                        uploader.upload(scanId);
+                    }
+                }
+                Log.d(TAG, "Moved " + creates.size() + " queued scans");
+                listener.onFlushed(creates.size());
+                flushIfPossible();
+            }
+
+            @Override
+            public void onFailed(Throwable error) {
+                // Still queued, try again in a while rather than straight into the same failure.
+                flushing = false;
+                mainHandler.postDelayed(flushRunnable, SESSION_POLL_MILLIS);
+            }
+        };
+        for (int i = 0; i < creates.size(); i++) {
+            final String scanId = creates.get(i);
+            final IngestedImage image = images.get(i);
+            final CachedResult cachedResult = image.cachedResult;
+            if (cachedResult == null) {
+                uploads.add(scanId);
+            } else {
+                blobStore.unpin(image.imageHash);
+            }
+            final boolean last = i == creates.size() - 1;
+            scheduler.create(scanId, image, cachedResult, true, last ? batchWritten : null);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.realm.scanner;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.RealmChangeListener;
+import io.realm.RealmResults;
+import io.realm.scanner.model.ImagePayload;
+import io.realm.scanner.model.Scan;
+
+/**
+ * Retries failed scans instead of discarding them and their image. Every scan that ends up in the failed status is
+ * put back to uploading after an exponential {@link Backoff}, which has the server analyse it again, up to
+ * {@link #MAX_RETRIES} times. A scan whose upload itself failed has its remaining chunks uploaded again. Scans that
+ * keep failing, or whose image the server has already stripped, stay in the history as failed.
+ * <p>
+ * Failed scans are found through an asynchronous query, so this covers every scan in the Realm, including those
+ * that failed while the app wasn't running. Must only be used from the main thread.
+ */
+class ScanRetryScheduler {
+    static final int MAX_RETRIES = 3;
+    private static final long BASE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final long MAX_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Realm realm;
+    private final ScanWriteScheduler scheduler;
+    private final ChunkedUploader uploader;
+    private final Backoff backoff = new Backoff(BASE_DELAY_MILLIS, MAX_DELAY_MILLIS);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Runnable> scheduled = new HashMap<>();
+    private final RealmResults<Scan> failed;
+    private final RealmChangeListener<RealmResults<Scan>> failedListener =
+            new RealmChangeListener<RealmResults<Scan>>() {
+                @Override
+                public void onChange(RealmResults<Scan> failed) {
+                    scheduleRetries();
+                }
+            };
+
+    ScanRetryScheduler(Realm realm, ScanWriteScheduler scheduler, ChunkedUploader uploader) {
+        this.realm = realm;
+        this.scheduler = scheduler;
+        this.uploader = uploader;
+        this.failed = realm.where(Scan.class)
+                .equalTo("status", StatusLiteral.FAILED)
+                .lessThan("retryCount", MAX_RETRIES)
+                .isNotNull("payload")
+                .findAllAsync();
+        failed.addChangeListener(failedListener);
+    }
+
+    static boolean willRetry(Scan scan) {
+        return scan.getRetryCount() < MAX_RETRIES && scan.getPayload() != null;
+    }
+
+    void close() {
+        failed.removeChangeListener(failedListener);
+        for (Runnable retry : scheduled.values()) {
+            mainHandler.removeCallbacks(retry);
+        }
+        scheduled.clear();
+    }
+
+    private void scheduleRetries() {
+        for (Scan scan : failed) {
+            final String scanId = scan.getScanId();
+            if (scheduled.containsKey(scanId)) {
+                continue;
+            }
+            final Runnable retry = new Runnable() {
+                @Override
+                public void run() {
+                    scheduled.remove(scanId);
+                    retry(scanId);
+                }
+            };
+            scheduled.put(scanId, retry);
+            mainHandler.postDelayed(retry, backoff.delay(scan.getRetryCount()));
+        }
+    }
+
+    private void retry(final String scanId) {
+        if (realm.isClosed()) {
+            return;
+        }
+        scheduler.retry(scanId, new ScanWriteScheduler.Callback() {
+            @Override
+            public void onWritten() {
+                final Scan scan = realm.where(Scan.class).equalTo("scanId", scanId).findFirst();
+                final ImagePayload payload = scan == null ? null : scan.getPayload();
+                if (payload != null && payload.getCommittedChunks() < payload.getChunkCount()) {
+                    uploader.upload(scanId);
+                }
+            }
+
+            @Override
+            public void onFailed(Throwable error) {
+                // Still failed with the same retry count, so the query won't report it again by itself.
+                if (!realm.isClosed()) {
+                    scheduleRetries();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,138 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import java.util.List;
+
+import io.realm.scanner.model.ScanTiming;
+
+/**
+ * Summarizes {@link ScanTiming}s into one latency histogram per stage, as plain text.
+ */
+class ScanTimingReport {
+    private static final int CAPTURED = 0;
+    private static final int DECODED = 1;
+    private static final int ENCODED = 2;
+    private static final int COMMITTED = 3;
+    private static final int UPLOADED = 4;
+    private static final int PICKED_UP = 5;
+    private static final int ANALYSIS_STARTED = 6;
+    private static final int TEXT_SCAN_RESULT = 7;
+    private static final int CLASSIFICATION_RESULT = 8;
+    private static final int FACE_DETECTION_RESULT = 9;
+    private static final int LAST_RESULT = 10;
+    private static final int COMPLETED = 11;
+
+    private static final String[] STAGE_NAMES = {
+            "Decode", "Encode", "Commit", "Upload", "Server pick-up", "Server queue", "Text scan", "Classification",
+            "Face detection", "Completion", "Total"
+    };
+    private static final int[][] STAGES = {
+            {CAPTURED, DECODED}, {DECODED, ENCODED}, {ENCODED, COMMITTED}, {COMMITTED, UPLOADED},
+            {UPLOADED, PICKED_UP}, {PICKED_UP, ANALYSIS_STARTED}, {ANALYSIS_STARTED, TEXT_SCAN_RESULT},
+            {ANALYSIS_STARTED, CLASSIFICATION_RESULT}, {ANALYSIS_STARTED, FACE_DETECTION_RESULT},
+            {LAST_RESULT, COMPLETED}, {CAPTURED, COMPLETED}
+    };
+
+    /**
+     * Upper bounds of the histogram buckets in milliseconds; the last bucket takes everything above.
+     */
+    private static final long[] BUCKETS = {50, 100, 250, 500, 1000, 2500, 5000, 10000};
+    private static final int BAR_WIDTH = 20;
+
+    private ScanTimingReport() {
+    }
+
+    static String build(List<ScanTiming> timings) {
+        final LatencyRecorder[] recorders = new LatencyRecorder[STAGES.length];
+        final int[][] histograms = new int[STAGES.length][BUCKETS.length + 1];
+        for (int i = 0; i < STAGES.length; i++) {
+            recorders[i] = new LatencyRecorder(Math.max(1, timings.size()));
+        }
+        for (ScanTiming timing : timings) {
+            final long[] stamps = stamps(timing);
+            for (int i = 0; i < STAGES.length; i++) {
+                final long from = stamps[STAGES[i][0]];
+                final long to = stamps[STAGES[i][1]];
+                if (from == 0 || to == 0) {
+                    continue;
+                }
+                recorders[i].record(to - from);
+                histograms[i][bucket(to - from)]++;
+            }
+        }
+
+        final StringBuilder report = new StringBuilder();
+        report.append(timings.size()).append(" scans\n");
+        for (int i = 0; i < STAGES.length; i++) {
+            report.append('\n').append(STAGE_NAMES[i]).append(": ");
+            if (recorders[i].getCount() == 0) {
+                report.append("no samples\n");
+                continue;
+            }
+            report.append(recorders[i]).append('\n');
+            appendHistogram(report, histograms[i], recorders[i].getCount());
+        }
+        return report.toString();
+    }
+
+    private static long[] stamps(ScanTiming timing) {
+        final long[] stamps = new long[COMPLETED + 1];
+        stamps[CAPTURED] = timing.getCapturedAt();
+        stamps[DECODED] = timing.getDecodedAt();
+        stamps[ENCODED] = timing.getEncodedAt();
+        stamps[COMMITTED] = timing.getCommittedAt();
+        stamps[UPLOADED] = timing.getUploadedAt();
+        stamps[PICKED_UP] = timing.getPickedUpAt();
+        stamps[ANALYSIS_STARTED] = timing.getAnalysisStartedAt();
+        stamps[TEXT_SCAN_RESULT] = timing.getTextScanResultAt();
+        stamps[CLASSIFICATION_RESULT] = timing.getClassificationResultAt();
+        stamps[FACE_DETECTION_RESULT] = timing.getFaceDetectionResultAt();
+        if (stamps[TEXT_SCAN_RESULT] != 0 && stamps[CLASSIFICATION_RESULT] != 0 && stamps[FACE_DETECTION_RESULT] != 0) {
+            stamps[LAST_RESULT] = Math.max(stamps[TEXT_SCAN_RESULT],
+                    Math.max(stamps[CLASSIFICATION_RESULT], stamps[FACE_DETECTION_RESULT]));
+        }
+        stamps[COMPLETED] = timing.getCompletedAt();
+        return stamps;
+    }
+
+    private static int bucket(long millis) {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            if (millis <= BUCKETS[i]) {
+                return i;
+            }
+        }
+        return BUCKETS.length;
+    }
+
+    private static void appendHistogram(StringBuilder report, int[] histogram, int count) {
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] == 0) {
+                continue;
+            }
+            final String label = i < BUCKETS.length ? "<=" + BUCKETS[i] : ">" + BUCKETS[BUCKETS.length - 1];
+            report.append(String.format("  %8sms ", label));
+            final int bar = Math.max(1, histogram[i] * BAR_WIDTH / count);
+            for (int j = 0; j < bar; j++) {
+                report.append('#');
+            }
+            report.append(' ').append(histogram[i]).append('\n');
+        }
+    }
+}
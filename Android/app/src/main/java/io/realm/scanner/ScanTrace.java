@@ -0,0 +1,115 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import io.realm.OrderedRealmCollectionSnapshot;
+import io.realm.Realm;
+import io.realm.Sort;
+import io.realm.scanner.model.Scan;
+import io.realm.scanner.model.ScanTiming;
+
+/**
+ * Stamps the client-side stages of a scan into its {@link ScanTiming}.
+ * <p>
+ * Capture, decode and encode happen before the scan exists, so they are held here and copied into the timing when the
+ * scan is created. {@link #start()} returns {@code null} and every other method returns right away when tracing is
+ * disabled; as {@link #ENABLED} is a compile time constant, a release build pays for little more than a null check.
+ * Timings outlive their scans so the report has something to show, the oldest are dropped past
+ * {@link #MAX_TIMINGS}.
+ */
+class ScanTrace {
+    static final boolean ENABLED = BuildConfig.SCAN_TRACING;
+    private static final int MAX_TIMINGS = 500;
+
+    private final long capturedAt;
+    private long decodedAt;
+    private long encodedAt;
+
+    private ScanTrace(long capturedAt) {
+        this.capturedAt = capturedAt;
+    }
+
+    /**
+     * @return a trace starting now, or {@code null} if tracing is disabled.
+     */
+    static ScanTrace start() {
+        return ENABLED ? new ScanTrace(System.currentTimeMillis()) : null;
+    }
+
+    void decoded() {
+        decodedAt = System.currentTimeMillis();
+    }
+
+    void encoded() {
+        encodedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Creates the timing of a scan, from within the transaction that creates the scan.
+     *
+     * @param uploaded whether the scan is complete with this transaction, i.e. it isn't uploaded in chunks.
+     */
+    void attach(Realm realm, Scan scan, boolean uploaded, boolean completed) {
+        final long now = System.currentTimeMillis();
+        final ScanTiming timing = realm.createObject(ScanTiming.class);
+        timing.setScanId(scan.getScanId());
+        timing.setCapturedAt(capturedAt);
+        timing.setDecodedAt(decodedAt);
+        timing.setEncodedAt(encodedAt);
+        timing.setCommittedAt(now);
+        if (uploaded) {
+            timing.setUploadedAt(now);
+        }
+        if (completed) {
+            timing.setCompletedAt(now);
+        }
+        scan.setTiming(timing);
+        prune(realm);
+    }
+
+    static void stampUploaded(Realm realm, String scanId) {
+        if (!ENABLED) {
+            return;
+        }
+        final ScanTiming timing = realm.where(ScanTiming.class).equalTo("scanId", scanId).findFirst();
+        if (timing != null) {
+            timing.setUploadedAt(System.currentTimeMillis());
+        }
+    }
+
+    static void stampCompleted(Scan scan) {
+        if (!ENABLED) {
+            return;
+        }
+        final ScanTiming timing = scan.getTiming();
+        if (timing != null && timing.getCompletedAt() == 0) {
+            timing.setCompletedAt(System.currentTimeMillis());
+        }
+    }
+
+    private static void prune(Realm realm) {
+        final OrderedRealmCollectionSnapshot<ScanTiming> byCapture = realm.where(ScanTiming.class)
+                .findAllSorted("capturedAt", Sort.ASCENDING)
+                .createSnapshot();
+        final int excess = byCapture.size() - MAX_TIMINGS;
+        for (int i = 0; i < excess; i++) {
+            byCapture.deleteFromRealm(i);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.realm.Realm;
+import io.realm.RealmAsyncTask;
+import io.realm.scanner.model.CachedResult;
+import io.realm.scanner.model.Scan;
+
+/**
+ * Runs the UI's writes to {@link Scan}s as asynchronous transactions on a background Realm.
+ * <p>
+ * Writes scheduled back to back are collected until the next main loop iteration and committed together in one
+ * transaction, and while a transaction is in flight new writes keep collecting for the next one. Callbacks run on the
+ * main thread once the UI Realm can see the committed changes, or once the transaction has failed, in which case none
+ * of the writes committed with it have been applied. Must only be used from the main thread.
+ */
+class ScanWriteScheduler {
+    private static final String TAG = "ScanWriteScheduler";
+    private static final int LATENCY_SAMPLES = 256;
+    private static final int LOG_INTERVAL = 20;
+
+    interface Callback {
+        void onWritten();
+
+        void onFailed(Throwable error);
+    }
+
+    private final Realm realm;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Write> pending = new ArrayList<>();
+    private final LatencyRecorder commitLatency = new LatencyRecorder(LATENCY_SAMPLES);
+    private boolean flushScheduled;
+    private RealmAsyncTask inFlight;
+    private int commitCount;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            flush();
+        }
+    };
+
+    ScanWriteScheduler(Realm realm) {
+        this.realm = realm;
+    }
+
+    void create(final String scanId, final IngestedImage image, final CachedResult cachedResult,
+                final boolean chunked, Callback callback) {
+        schedule(new Write(scanId, callback) {
+            @Override
+            void execute(Realm realm) {
+                Scans.create(realm, scanId, image, cachedResult, chunked);
+            }
+        });
+    }
+
+    void setStatus(String scanId, final String status) {
+        schedule(new Write(scanId, null) {
+            @Override
+            void execute(Realm realm) {
+                final Scan scan = find(realm, scanId);
+                if (scan != null) {
+                    scan.setStatus(status);
+                    if (status.equals(StatusLiteral.COMPLETED)) {
+                        ScanTrace.stampCompleted(scan);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Puts a failed scan back into the uploading status, so the server picks it up again, and counts the retry.
+     */
+    void retry(String scanId, Callback callback) {
+        schedule(new Write(scanId, callback) {
+            @Override
+            void execute(Realm realm) {
+                final Scan scan = find(realm, scanId);
+                if (scan != null && scan.getStatus().equals(StatusLiteral.FAILED)) {
+                    scan.setStatus(StatusLiteral.UPLOADING);
+                    scan.setRetryCount(scan.getRetryCount() + 1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Commits everything still pending synchronously. Used when the UI Realm is about to be closed.
+     */
+    void flushNow() {
+        mainHandler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+        if (pending.isEmpty()) {
+            return;
+        }
+        final List<Write> writes = new ArrayList<>(pending);
+        pending.clear();
+        realm.executeTransaction(new Realm.Transaction() {
+            @Override
+            public void execute(Realm realm) {
+                for (Write write : writes) {
+                    write.execute(realm);
+                }
+            }
+        });
+    }
+
+    private void schedule(Write write) {
+        pending.add(write);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled && inFlight == null) {
+            flushScheduled = true;
+            mainHandler.post(flushRunnable);
+        }
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final List<Write> writes = new ArrayList<>(pending);
+        pending.clear();
+        if (realm.isClosed()) {
+            // Nothing can be committed any more, but the callers still hold on to their writes.
+            final Throwable error = new IllegalStateException("Realm is closed");
+            Log.w(TAG, "Dropping " + writes.size() + " scan writes, the Realm is closed");
+            for (Write write : writes) {
+                if (write.callback != null) {
+                    write.callback.onFailed(error);
+                }
+            }
+            return;
+        }
+        inFlight = realm.executeTransactionAsync(new Realm.Transaction() {
+            @Override
+            public void execute(Realm realm) {
+                for (Write write : writes) {
+                    write.execute(realm);
+                }
+            }
+        }, new Realm.Transaction.OnSuccess() {
+            @Override
+            public void onSuccess() {
+                inFlight = null;
+                final long now = SystemClock.elapsedRealtime();
+                for (Write write : writes) {
+                    commitLatency.record(now - write.scheduledAt);
+                }
+                if (++commitCount % LOG_INTERVAL == 0) {
+                    Log.d(TAG, "Commit latency " + commitLatency);
+                }
+                for (Write write : writes) {
+                    if (write.callback != null) {
+                        write.callback.onWritten();
+                    }
+                }
+                scheduleFlush();
+            }
+        }, new Realm.Transaction.OnError() {
+            @Override
+            public void onError(Throwable error) {
+                inFlight = null;
+                Log.e(TAG, "Failed to commit " + writes.size() + " scan writes", error);
+                for (Write write : writes) {
+                    if (write.callback != null) {
+                        write.callback.onFailed(error);
+                    }
+                }
+                scheduleFlush();
+            }
+        });
+    }
+
+    private static Scan find(Realm realm, String scanId) {
+        return realm.where(Scan.class).equalTo("scanId", scanId).findFirst();
+    }
+
+    private abstract static class Write {
+        final String scanId;
+        final Callback callback;
+        final long scheduledAt = SystemClock.elapsedRealtime();
+
+        Write(String scanId, Callback callback) {
+            this.scanId = scanId;
+            this.callback = callback;
+        }
+
+        abstract void execute(Realm realm);
+    }
+}
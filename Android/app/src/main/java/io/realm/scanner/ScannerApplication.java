@@ -18,18 +18,84 @@
 
 package io.realm.scanner;
 
+import android.app.ActivityManager;
 import android.app.Application;
+import android.graphics.Bitmap;
 import android.util.Log;
 
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
 import io.realm.Realm;
 import io.realm.log.RealmLog;
 
 public class ScannerApplication extends Application {
+    private static final String TAG = "ScannerApplication";
+    private static final String BLOB_DIRECTORY = "blobs";
+    private static final long BLOB_STORE_LIMIT = 64 * 1024 * 1024;
+    private static final int RESULT_CACHE_ENTRIES = 256;
+    private static final long RESULT_CACHE_TTL = TimeUnit.DAYS.toMillis(7);
+    // Scan images are photos without transparency: preview them at half the memory of ARGB_8888.
+    private static final Bitmap.Config PREVIEW_CONFIG = Bitmap.Config.RGB_565;
+
+    private BlobStore blobStore;
+    private BitmapPool bitmapPool;
+    private ResultCache resultCache;
+    private ScanImageLoader scanImageLoader;
+    private ScanQueue scanQueue;
 
     @Override
     public void onCreate() {
         super.onCreate();
+        StartupTimer.processStarted();
         Realm.init(this);
-        RealmLog.setLevel(Log.VERBOSE);
+        RealmLog.setLevel(BuildConfig.REALM_LOG_LEVEL);
+        blobStore = new BlobStore(new File(getFilesDir(), BLOB_DIRECTORY), BLOB_STORE_LIMIT);
+        resultCache = new ResultCache(RESULT_CACHE_ENTRIES, RESULT_CACHE_TTL);
+        final MemoryBudget memoryBudget = new MemoryBudget((ActivityManager) getSystemService(ACTIVITY_SERVICE));
+        Log.d(TAG, "Memory budget: " + memoryBudget);
+        bitmapPool = new BitmapPool(memoryBudget.bitmapPoolBytes);
+        scanImageLoader = new ScanImageLoader(blobStore, bitmapPool, PREVIEW_CONFIG, memoryBudget.imageCacheBytes);
+        scanQueue = new ScanQueue(blobStore);
+        // Pins don't survive the process: protect the images of scans queued by an earlier run from eviction.
+        scanQueue.repin();
+    }
+
+    /**
+     * Hands the pressure on to the bitmap caches, so they shrink before the process gets killed.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        Log.d(TAG, "Trimming memory, level " + level);
+        scanImageLoader.trimMemory(level);
+        bitmapPool.trimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        scanImageLoader.trimMemory(TRIM_MEMORY_COMPLETE);
+        bitmapPool.clear();
+    }
+
+    BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    BitmapPool getBitmapPool() {
+        return bitmapPool;
+    }
+
+    ScanImageLoader getScanImageLoader() {
+        return scanImageLoader;
+    }
+
+    ScanQueue getScanQueue() {
+        return scanQueue;
     }
 }
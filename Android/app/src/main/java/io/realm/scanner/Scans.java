@@ -0,0 +1,174 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+import io.realm.ObjectChangeSet;
+import io.realm.Realm;
+import io.realm.scanner.model.CachedResult;
+import io.realm.scanner.model.Classification;
+import io.realm.scanner.model.Face;
+import io.realm.scanner.model.FaceDetection;
+import io.realm.scanner.model.ImageClass;
+import io.realm.scanner.model.ImagePayload;
+import io.realm.scanner.model.Scan;
+import io.realm.scanner.model.TextResult;
+import io.realm.scanner.model.Thumbnail;
+
+/**
+ * Creates {@link Scan}s together with their {@link ImagePayload}, {@link Thumbnail} and results, and answers
+ * questions about their results. Methods that modify Realm objects must be called inside a write transaction.
+ * <p>
+ * Every result is either typed, as a {@link TextResult}, {@link Classification} or
+ * {@link FaceDetection}, or a preformatted string from a server that writes legacy results only. A result has
+ * arrived once either of them is set.
+ */
+class Scans {
+    private Scans() {
+    }
+
+    /**
+     * Creates a scan for an ingested image. With a cached result the scan is created as completed and nothing needs
+     * to be uploaded; otherwise it starts out uploading with either a whole or a chunked payload.
+     */
+    static Scan create(Realm realm, String scanId, IngestedImage image, CachedResult cachedResult, boolean chunked) {
+        final Scan scan = realm.createObject(Scan.class);
+        scan.setScanId(scanId);
+        scan.setImageHash(image.imageHash);
+        scan.setPerceptualHash(image.perceptualHash);
+        scan.setImageSize(image.size);
+        scan.setImageWidth(image.width);
+        scan.setImageHeight(image.height);
+        scan.setCreatedAt(System.currentTimeMillis());
+        if (image.thumbnail != null) {
+            final Thumbnail thumbnail = realm.createObject(Thumbnail.class);
+            thumbnail.setScanId(scanId);
+            thumbnail.setData(image.thumbnail.data);
+            thumbnail.setWidth(image.thumbnail.width);
+            thumbnail.setHeight(image.thumbnail.height);
+            scan.setThumbnail(thumbnail);
+        }
+
+        if (cachedResult != null) {
+            scan.setStatus(StatusLiteral.COMPLETED);
+            scan.setFromCache(true);
+            scan.setTextScanResult(cachedResult.getTextScanResult());
+            scan.setClassificationResult(cachedResult.getClassificationResult());
+            scan.setFaceDetectionResult(cachedResult.getFaceDetectionResult());
+            copyResults(realm, cachedResult, scan);
+            if (image.trace != null) {
+                image.trace.attach(realm, scan, true, true);
+            }
+            return scan;
+        }
+
+        final ImagePayload payload = realm.createObject(ImagePayload.class);
+        payload.setScanId(scanId);
+        payload.setImageHash(image.imageHash);
+        if (chunked) {
+            payload.setChunkCount(ChunkedUploader.chunkCount(image.size));
+        } else {
+            payload.setImageData(image.imageData);
+        }
+        scan.setStatus(StatusLiteral.UPLOADING);
+        scan.setPayload(payload);
+        if (image.trace != null) {
+            image.trace.attach(realm, scan, !chunked, false);
+        }
+        return scan;
+    }
+
+    static void deleteResults(TextResult text, Classification classification, FaceDetection faceDetection) {
+        if (text != null) {
+            text.deleteFromRealm();
+        }
+        if (classification != null) {
+            classification.getClasses().deleteAllFromRealm();
+            classification.deleteFromRealm();
+        }
+        if (faceDetection != null) {
+            faceDetection.getFaces().deleteAllFromRealm();
+            faceDetection.deleteFromRealm();
+        }
+    }
+
+    /**
+     * Copies the typed results of a cache entry, which is not managed by {@code realm}, into the scan.
+     */
+    private static void copyResults(Realm realm, CachedResult cachedResult, Scan scan) {
+        if (cachedResult.getText() != null) {
+            scan.setText(realm.copyToRealm(cachedResult.getText()));
+        }
+        if (cachedResult.getClassification() != null) {
+            final Classification classification = realm.copyToRealm(cachedResult.getClassification());
+            for (ImageClass imageClass : classification.getClasses()) {
+                imageClass.setScanId(scan.getScanId());
+            }
+            scan.setClassification(classification);
+        }
+        if (cachedResult.getFaceDetection() != null) {
+            final FaceDetection faceDetection = realm.copyToRealm(cachedResult.getFaceDetection());
+            for (Face face : faceDetection.getFaces()) {
+                face.setScanId(scan.getScanId());
+            }
+            scan.setFaceDetection(faceDetection);
+        }
+    }
+
+    static boolean hasTextResult(Scan scan) {
+        return scan.getText() != null || scan.getTextScanResult() != null;
+    }
+
+    static boolean hasClassificationResult(Scan scan) {
+        return scan.getClassification() != null || scan.getClassificationResult() != null;
+    }
+
+    static boolean hasFaceDetectionResult(Scan scan) {
+        return scan.getFaceDetection() != null || scan.getFaceDetectionResult() != null;
+    }
+
+    static boolean hasAllResults(Scan scan) {
+        return hasTextResult(scan) && hasClassificationResult(scan) && hasFaceDetectionResult(scan);
+    }
+
+    static boolean isStatusChanged(ObjectChangeSet changeSet) {
+        return isFieldChanged(changeSet, "status");
+    }
+
+    static boolean isTextChanged(ObjectChangeSet changeSet) {
+        return isFieldChanged(changeSet, "text")
+                || isFieldChanged(changeSet, "textScanResult");
+    }
+
+    static boolean isClassificationChanged(ObjectChangeSet changeSet) {
+        return isFieldChanged(changeSet, "classification")
+                || isFieldChanged(changeSet, "classificationResult");
+    }
+
+    static boolean isFaceDetectionChanged(ObjectChangeSet changeSet) {
+        return isFieldChanged(changeSet, "faceDetection")
+                || isFieldChanged(changeSet, "faceDetectionResult");
+    }
+
+    /**
+     * A {@code null} change set, as object listeners get for the first notification, counts as every field changed.
+     */
+    private static boolean isFieldChanged(ObjectChangeSet changeSet, String fieldName) {
+        return changeSet == null || changeSet.isFieldChanged(fieldName);
+    }
+}
@@ -0,0 +1,95 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.realm.scanner;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Measures the time to interactive of a cold start: from the application being created to the capture button
+ * being usable. Launches that could reuse the logged-in user are recorded apart from those that had to log in.
+ * <p>
+ * The last {@link #SAMPLES} launches of each kind are kept in shared preferences, so the percentiles logged on
+ * every launch cover more than a single run.
+ */
+class StartupTimer {
+    private static final String TAG = "StartupTimer";
+    private static final String PREFERENCES_NAME = "startup_timer";
+    private static final int SAMPLES = 20;
+
+    static final String CACHED_USER = "cached_user";
+    static final String LOGIN = "login";
+
+    private static long startedAt;
+    private static boolean measured;
+
+    private StartupTimer() {
+    }
+
+    static void processStarted() {
+        startedAt = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Records the time to interactive, once per process: an activity that is re-created later isn't a cold start.
+     *
+     * @param kind either {@link #CACHED_USER} or {@link #LOGIN}.
+     */
+    static void interactive(Context context, String kind) {
+        if (measured || startedAt == 0) {
+            return;
+        }
+        measured = true;
+        final long millis = SystemClock.elapsedRealtime() - startedAt;
+        final SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        final String samples = append(preferences.getString(kind, ""), millis);
+        preferences.edit().putString(kind, samples).apply();
+        Log.i(TAG, "Interactive after " + millis + "ms (" + kind + "), last launches: " + recorder(samples));
+    }
+
+    /**
+     * @return the percentiles of the recorded launches of each kind.
+     */
+    static String summary(Context context) {
+        final SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        return "Time to interactive\n"
+                + "  " + CACHED_USER + ": " + recorder(preferences.getString(CACHED_USER, "")) + "\n"
+                + "  " + LOGIN + ": " + recorder(preferences.getString(LOGIN, "")) + "\n";
+    }
+
+    private static String append(String samples, long millis) {
+        final String[] previous = samples.isEmpty() ? new String[0] : samples.split(",");
+        final StringBuilder builder = new StringBuilder();
+        for (int i = Math.max(0, previous.length - SAMPLES + 1); i < previous.length; i++) {
+            builder.append(previous[i]).append(',');
+        }
+        return builder.append(millis).toString();
+    }
+
+    private static LatencyRecorder recorder(String samples) {
+        final LatencyRecorder recorder = new LatencyRecorder(SAMPLES);
+        if (!samples.isEmpty()) {
+            for (String sample : samples.split(",")) {
+                recorder.record(Long.parseLong(sample));
+            }
+        }
+        return recorder;
+    }
+}
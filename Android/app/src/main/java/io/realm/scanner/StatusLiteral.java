@@ -0,0 +1,34 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner;
+
+/**
+ * Values of {@code Scan.status}. These must match the strings used by the server in {@code Server/index.js}.
+ */
+class StatusLiteral {
+    static final String UPLOADING = "Uploading";
+    static final String FAILED = "Failed";
+    static final String CLASSIFICATION_RESULT_READY = "ClassificationResultReady";
+    static final String TEXTSCAN_RESULT_READY = "TextScanResultReady";
+    static final String FACE_DETECTION_RESULT_READY = "FaceDetectionResultReady";
+    static final String COMPLETED = "Completed";
+
+    private StatusLiteral() {
+    }
+}
@@ -0,0 +1,121 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner.model;
+
+import io.realm.RealmObject;
+import io.realm.annotations.Index;
+import io.realm.annotations.PrimaryKey;
+
+/**
+ * Analysis results of an image that has been scanned before, kept in the local result cache.
+ */
+public class CachedResult extends RealmObject {
+    @PrimaryKey
+    private String imageHash;
+    private long perceptualHash;
+    private String textScanResult;
+    private String classificationResult;
+    private String faceDetectionResult;
+    private TextResult text;
+    private Classification classification;
+    private FaceDetection faceDetection;
+    private long createdAt;
+    @Index
+    private long lastUsedAt;
+
+    public String getImageHash() {
+        return imageHash;
+    }
+
+    public void setImageHash(String imageHash) {
+        this.imageHash = imageHash;
+    }
+
+    public long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    public void setPerceptualHash(long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+    }
+
+    public String getTextScanResult() {
+        return textScanResult;
+    }
+
+    public void setTextScanResult(String textScanResult) {
+        this.textScanResult = textScanResult;
+    }
+
+    public String getClassificationResult() {
+        return classificationResult;
+    }
+
+    public void setClassificationResult(String classificationResult) {
+        this.classificationResult = classificationResult;
+    }
+
+    public String getFaceDetectionResult() {
+        return faceDetectionResult;
+    }
+
+    public void setFaceDetectionResult(String faceDetectionResult) {
+        this.faceDetectionResult = faceDetectionResult;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    public void setLastUsedAt(long lastUsedAt) {
+        this.lastUsedAt = lastUsedAt;
+    }
+
+    public TextResult getText() {
+        return text;
+    }
+
+    public void setText(TextResult text) {
+        this.text = text;
+    }
+
+    public Classification getClassification() {
+        return classification;
+    }
+
+    public void setClassification(Classification classification) {
+        this.classification = classification;
+    }
+
+    public FaceDetection getFaceDetection() {
+        return faceDetection;
+    }
+
+    public void setFaceDetection(FaceDetection faceDetection) {
+        this.faceDetection = faceDetection;
+    }
+}
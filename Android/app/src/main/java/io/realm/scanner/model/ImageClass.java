@@ -0,0 +1,68 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner.model;
+
+import io.realm.RealmObject;
+import io.realm.annotations.Index;
+
+/**
+ * One class of a {@link Classification}, with the id of its scan so scans can be found by class name through the
+ * index.
+ */
+public class ImageClass extends RealmObject {
+    @Index
+    private String scanId;
+    @Index
+    private String className;
+    private double score;
+    @Index
+    private String typeHierarchy;
+
+    public String getScanId() {
+        return scanId;
+    }
+
+    public void setScanId(String scanId) {
+        this.scanId = scanId;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public void setClassName(String className) {
+        this.className = className;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+
+    public String getTypeHierarchy() {
+        return typeHierarchy;
+    }
+
+    public void setTypeHierarchy(String typeHierarchy) {
+        this.typeHierarchy = typeHierarchy;
+    }
+}
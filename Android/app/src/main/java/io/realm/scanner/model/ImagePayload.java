@@ -0,0 +1,87 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner.model;
+
+import io.realm.RealmList;
+import io.realm.RealmObject;
+
+/**
+ * The bytes that are uploaded for a {@link Scan}. Kept out of {@link Scan} so that status and result notifications
+ * never have to touch the image.
+ * <p>
+ * The image is either stored whole in {@code imageData}, or split into {@code chunkCount} {@link ImageChunk}s that
+ * are committed one transaction at a time. {@code committedChunks} tracks how far a chunked upload has come so it
+ * can be resumed.
+ */
+public class ImagePayload extends RealmObject {
+    private String scanId;
+    private String imageHash;
+    private byte[] imageData;
+    private int chunkCount;
+    private int committedChunks;
+    private RealmList<ImageChunk> chunks;
+
+    public String getScanId() {
+        return scanId;
+    }
+
+    public void setScanId(String scanId) {
+        this.scanId = scanId;
+    }
+
+    public String getImageHash() {
+        return imageHash;
+    }
+
+    public void setImageHash(String imageHash) {
+        this.imageHash = imageHash;
+    }
+
+    public byte[] getImageData() {
+        return imageData;
+    }
+
+    public void setImageData(byte[] imageData) {
+        this.imageData = imageData;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public void setChunkCount(int chunkCount) {
+        this.chunkCount = chunkCount;
+    }
+
+    public int getCommittedChunks() {
+        return committedChunks;
+    }
+
+    public void setCommittedChunks(int committedChunks) {
+        this.committedChunks = committedChunks;
+    }
+
+    public RealmList<ImageChunk> getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(RealmList<ImageChunk> chunks) {
+        this.chunks = chunks;
+    }
+}
@@ -19,6 +19,7 @@
 package io.realm.scanner.model;
 
 import io.realm.RealmObject;
+import io.realm.annotations.Index;
 import io.realm.annotations.Required;
 
 public class Scan extends RealmObject{
@@ -26,10 +27,24 @@ public class Scan extends RealmObject{
     private String scanId;
     @Required
     private String status;
+    @Index
+    private long createdAt;
     private String textScanResult;
     private String classificationResult;
     private String faceDetectionResult;
-    private byte[] imageData;
+    private TextResult text;
+    private Classification classification;
+    private FaceDetection faceDetection;
+    private String imageHash;
+    private long perceptualHash;
+    private long imageSize;
+    private int imageWidth;
+    private int imageHeight;
+    private ImagePayload payload;
+    private ScanTiming timing;
+    private int retryCount;
+    private boolean fromCache;
+    private Thumbnail thumbnail;
 
     public String getScanId() {
         return scanId;
@@ -47,6 +62,14 @@ public class Scan extends RealmObject{
         this.status = status;
     }
 
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
     public String getTextScanResult() {
         return textScanResult;
     }
@@ -71,11 +94,107 @@ public class Scan extends RealmObject{
         this.faceDetectionResult = faceDetectionResult;
     }
 
-    public byte[] getImageData() {
-        return imageData;
+    public String getImageHash() {
+        return imageHash;
+    }
+
+    public void setImageHash(String imageHash) {
+        this.imageHash = imageHash;
+    }
+
+    public long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    public void setPerceptualHash(long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+    }
+
+    public long getImageSize() {
+        return imageSize;
+    }
+
+    public void setImageSize(long imageSize) {
+        this.imageSize = imageSize;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public void setImageWidth(int imageWidth) {
+        this.imageWidth = imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    public void setImageHeight(int imageHeight) {
+        this.imageHeight = imageHeight;
+    }
+
+    public ImagePayload getPayload() {
+        return payload;
+    }
+
+    public void setPayload(ImagePayload payload) {
+        this.payload = payload;
+    }
+
+    public ScanTiming getTiming() {
+        return timing;
+    }
+
+    public void setTiming(ScanTiming timing) {
+        this.timing = timing;
+    }
+
+    public TextResult getText() {
+        return text;
+    }
+
+    public void setText(TextResult text) {
+        this.text = text;
+    }
+
+    public Classification getClassification() {
+        return classification;
+    }
+
+    public void setClassification(Classification classification) {
+        this.classification = classification;
+    }
+
+    public FaceDetection getFaceDetection() {
+        return faceDetection;
+    }
+
+    public void setFaceDetection(FaceDetection faceDetection) {
+        this.faceDetection = faceDetection;
+    }
+
+    public Thumbnail getThumbnail() {
+        return thumbnail;
+    }
+
+    public void setThumbnail(Thumbnail thumbnail) {
+        this.thumbnail = thumbnail;
+    }
+
+    public int getRetryCount() {
+        return retryCount;
+    }
+
+    public void setRetryCount(int retryCount) {
+        this.retryCount = retryCount;
+    }
+
+    public boolean isFromCache() {
+        return fromCache;
     }
 
-    public void setImageData(byte[] imageData) {
-        this.imageData = imageData;
+    public void setFromCache(boolean fromCache) {
+        this.fromCache = fromCache;
     }
 }
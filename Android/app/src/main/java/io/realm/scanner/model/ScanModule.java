@@ -0,0 +1,29 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner.model;
+
+import io.realm.annotations.RealmModule;
+
+/**
+ * Classes that are part of the synced scanner Realm shared with the server.
+ */
+@RealmModule(classes = {Scan.class, ImagePayload.class, ImageChunk.class, ScanTiming.class, Thumbnail.class,
+        TextResult.class, Classification.class, ImageClass.class, FaceDetection.class, Face.class})
+public class ScanModule {
+}
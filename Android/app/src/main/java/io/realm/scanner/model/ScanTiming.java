@@ -0,0 +1,140 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner.model;
+
+import io.realm.RealmObject;
+
+/**
+ * When each stage of a {@link Scan} finished, as milliseconds since the epoch; zero for stages that haven't happened
+ * yet. The client stamps capture through upload and completion, the server stamps pick-up and the analyses. Only
+ * created when tracing is enabled.
+ * <p>
+ * Client and server stamps come from different clocks, so stages that cross between them are only as accurate as
+ * the two clocks are in sync.
+ */
+public class ScanTiming extends RealmObject {
+    private String scanId;
+    private long capturedAt;
+    private long decodedAt;
+    private long encodedAt;
+    private long committedAt;
+    private long uploadedAt;
+    private long pickedUpAt;
+    private long analysisStartedAt;
+    private long textScanResultAt;
+    private long classificationResultAt;
+    private long faceDetectionResultAt;
+    private long completedAt;
+
+    public String getScanId() {
+        return scanId;
+    }
+
+    public void setScanId(String scanId) {
+        this.scanId = scanId;
+    }
+
+    public long getCapturedAt() {
+        return capturedAt;
+    }
+
+    public void setCapturedAt(long capturedAt) {
+        this.capturedAt = capturedAt;
+    }
+
+    public long getDecodedAt() {
+        return decodedAt;
+    }
+
+    public void setDecodedAt(long decodedAt) {
+        this.decodedAt = decodedAt;
+    }
+
+    public long getEncodedAt() {
+        return encodedAt;
+    }
+
+    public void setEncodedAt(long encodedAt) {
+        this.encodedAt = encodedAt;
+    }
+
+    public long getCommittedAt() {
+        return committedAt;
+    }
+
+    public void setCommittedAt(long committedAt) {
+        this.committedAt = committedAt;
+    }
+
+    public long getUploadedAt() {
+        return uploadedAt;
+    }
+
+    public void setUploadedAt(long uploadedAt) {
+        this.uploadedAt = uploadedAt;
+    }
+
+    public long getPickedUpAt() {
+        return pickedUpAt;
+    }
+
+    public void setPickedUpAt(long pickedUpAt) {
+        this.pickedUpAt = pickedUpAt;
+    }
+
+    public long getAnalysisStartedAt() {
+        return analysisStartedAt;
+    }
+
+    public void setAnalysisStartedAt(long analysisStartedAt) {
+        this.analysisStartedAt = analysisStartedAt;
+    }
+
+    public long getTextScanResultAt() {
+        return textScanResultAt;
+    }
+
+    public void setTextScanResultAt(long textScanResultAt) {
+        this.textScanResultAt = textScanResultAt;
+    }
+
+    public long getClassificationResultAt() {
+        return classificationResultAt;
+    }
+
+    public void setClassificationResultAt(long classificationResultAt) {
+        this.classificationResultAt = classificationResultAt;
+    }
+
+    public long getFaceDetectionResultAt() {
+        return faceDetectionResultAt;
+    }
+
+    public void setFaceDetectionResultAt(long faceDetectionResultAt) {
+        this.faceDetectionResultAt = faceDetectionResultAt;
+    }
+
+    public long getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(long completedAt) {
+        this.completedAt = completedAt;
+    }
+}
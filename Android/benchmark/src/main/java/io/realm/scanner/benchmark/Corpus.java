@@ -0,0 +1,67 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Synthetic photos for the benchmarks: smooth gradients with some noise on top, which compress roughly like a camera
+ * picture of a label. Seeded, so every run sees the same pixels.
+ */
+final class Corpus {
+    /**
+     * Typical picker and camera sizes, from a small screenshot up to a 12 megapixel camera.
+     */
+    static final String SIZE_480P = "640x480";
+    static final String SIZE_MAX_DIMENSION = "1600x1200";
+    static final String SIZE_12MP = "4032x3024";
+
+    private Corpus() {
+    }
+
+    static int width(String size) {
+        return Integer.parseInt(size.substring(0, size.indexOf('x')));
+    }
+
+    static int height(String size) {
+        return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+    }
+
+    static BufferedImage image(int width, int height) {
+        final Random random = new Random(7919);
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int noise = random.nextInt(24);
+                final int red = (x * 255 / width + noise) & 0xff;
+                final int green = (y * 255 / height + noise) & 0xff;
+                final int blue = ((x + y) * 127 / (width + height) + noise) & 0xff;
+                image.setRGB(x, y, (red << 16) | (green << 8) | blue);
+            }
+        }
+        return image;
+    }
+
+    static byte[] bytes(int length) {
+        final byte[] data = new byte[length];
+        new Random(7919).nextBytes(data);
+        return data;
+    }
+}
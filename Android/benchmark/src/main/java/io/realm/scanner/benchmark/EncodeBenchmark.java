@@ -0,0 +1,138 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import io.realm.scanner.core.QualitySearch;
+
+/**
+ * The quality search of the encoder, with ImageIO's JPEG writer standing in for {@code Bitmap.compress()}. The
+ * absolute times say little about a phone, but the number of attempts and the bytes allocated per encode do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EncodeBenchmark {
+    @Param({Corpus.SIZE_480P, Corpus.SIZE_MAX_DIMENSION, Corpus.SIZE_12MP})
+    public String size;
+
+    @Param({"262144", "1048576"})
+    public int byteBudget;
+
+    @Param({"true", "false"})
+    public boolean preferResolution;
+
+    private BufferedImage source;
+
+    @Setup
+    public void setUp() {
+        source = Corpus.image(Corpus.width(size), Corpus.height(size));
+    }
+
+    @Benchmark
+    public QualitySearch.Result encode() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(byteBudget, 512 * 1024));
+        return QualitySearch.encode(new JpegImage(source, out), byteBudget, preferResolution);
+    }
+
+    private static class JpegImage implements QualitySearch.Image {
+        private final BufferedImage image;
+        private final ByteArrayOutputStream out;
+
+        JpegImage(BufferedImage image, ByteArrayOutputStream out) {
+            this.image = image;
+            this.out = out;
+        }
+
+        @Override
+        public int getWidth() {
+            return image.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return image.getHeight();
+        }
+
+        @Override
+        public byte[] compress(int quality) {
+            out.reset();
+            final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            try {
+                final ImageOutputStream imageOut = ImageIO.createImageOutputStream(out);
+                try {
+                    final ImageWriteParam param = writer.getDefaultWriteParam();
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(quality / 100f);
+                    writer.setOutput(imageOut);
+                    writer.write(null, new IIOImage(image, null, null), param);
+                } finally {
+                    imageOut.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                writer.dispose();
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        public QualitySearch.Image scale(int width, int height) {
+            final BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            final Graphics2D graphics = scaled.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+            graphics.dispose();
+            return new JpegImage(scaled, out);
+        }
+
+        @Override
+        public void release() {
+            image.flush();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import io.realm.scanner.core.Hashes;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HashBenchmark {
+    @Param({"65536", "524288", "2097152"})
+    public int length;
+
+    private byte[] data;
+    private int[] pixels;
+
+    @Setup
+    public void setUp() {
+        data = Corpus.bytes(length);
+        pixels = new int[Hashes.DHASH_WIDTH * Hashes.DHASH_HEIGHT];
+        Corpus.image(Hashes.DHASH_WIDTH, Hashes.DHASH_HEIGHT)
+                .getRGB(0, 0, Hashes.DHASH_WIDTH, Hashes.DHASH_HEIGHT, pixels, 0, Hashes.DHASH_WIDTH);
+    }
+
+    @Benchmark
+    public String sha256() {
+        return Hashes.sha256(data);
+    }
+
+    @Benchmark
+    public long dHash() {
+        return Hashes.dHash(pixels);
+    }
+}
@@ -0,0 +1,59 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import io.realm.scanner.core.SampleSize;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SampleSizeBenchmark {
+    @Param({Corpus.SIZE_480P, Corpus.SIZE_MAX_DIMENSION, Corpus.SIZE_12MP})
+    public String size;
+
+    private int width;
+    private int height;
+
+    @Setup
+    public void setUp() {
+        width = Corpus.width(size);
+        height = Corpus.height(size);
+    }
+
+    @Benchmark
+    public int toFit() {
+        return SampleSize.toFit(width, height, 1600);
+    }
+
+    @Benchmark
+    public int toCover() {
+        return SampleSize.toCover(width, height, 1080, 0);
+    }
+}
@@ -0,0 +1,65 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.scanner.core.Streams;
+
+/**
+ * Reading a picked image into memory: the size of the copy buffer, and whether the output is sized up front from
+ * the content length or has to grow as it goes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StreamsBenchmark {
+    @Param({"65536", "524288", "2097152"})
+    public int length;
+
+    @Param({"4096", "7919", "8192", "65536"})
+    public int bufferSize;
+
+    @Param({"true", "false"})
+    public boolean lengthKnown;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() {
+        data = Corpus.bytes(length);
+    }
+
+    @Benchmark
+    public byte[] readUpToLimit() throws IOException {
+        return Streams.readUpToLimit(new ByteArrayInputStream(data), lengthKnown ? length : -1, Integer.MAX_VALUE,
+                bufferSize);
+    }
+}
@@ -0,0 +1,81 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner.core;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The two hashes every ingested image gets: SHA-256 of its bytes, which names the blob and finds exact repeats, and a
+ * 64 bit difference hash ("dHash") of its pixels, which finds photos of the same label.
+ * <p>
+ * For the dHash the image is shrunk to {@link #DHASH_WIDTH}x{@link #DHASH_HEIGHT} pixels and every bit records
+ * whether a pixel is brighter than its right-hand neighbour. Re-encoding, rescaling or small exposure changes flip
+ * only a few bits, so two such photos end up a short Hamming distance apart even though their SHA-256 differs.
+ */
+public final class Hashes {
+    public static final int DHASH_WIDTH = 9;
+    public static final int DHASH_HEIGHT = 8;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Hashes() {
+    }
+
+    public static String sha256(byte[] data) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            final char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+                hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @param pixels {@link #DHASH_WIDTH} x {@link #DHASH_HEIGHT} ARGB pixels, row by row.
+     */
+    public static long dHash(int[] pixels) {
+        if (pixels.length != DHASH_WIDTH * DHASH_HEIGHT) {
+            throw new IllegalArgumentException("Expected " + DHASH_WIDTH * DHASH_HEIGHT + " pixels: " + pixels.length);
+        }
+        long hash = 0;
+        for (int y = 0; y < DHASH_HEIGHT; y++) {
+            for (int x = 0; x < DHASH_WIDTH - 1; x++) {
+                hash <<= 1;
+                if (luminance(pixels[y * DHASH_WIDTH + x]) > luminance(pixels[y * DHASH_WIDTH + x + 1])) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long lhs, long rhs) {
+        return Long.bitCount(lhs ^ rhs);
+    }
+
+    private static int luminance(int color) {
+        return (((color >> 16) & 0xff) * 299 + ((color >> 8) & 0xff) * 587 + (color & 0xff) * 114) / 1000;
+    }
+}
@@ -0,0 +1,127 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner.core;
+
+/**
+ * Finds the highest encoding quality at which an image still fits a byte budget.
+ * <p>
+ * The budget is the size uploads should have rather than the most the server accepts, and {@link #MAX_QUALITY} is
+ * the fixed quality images used to be encoded at, so the search never produces larger uploads than before. The
+ * quality is binary searched between {@link #MAX_QUALITY} and a floor; only when even the floor doesn't fit is the
+ * image scaled down and the search repeated. When resolution is preferred, as text recognition needs legible
+ * glyphs more than clean gradients, the floor is lowered so quality is given up before pixels are.
+ */
+public final class QualitySearch {
+    public static final int MAX_QUALITY = 80;
+    public static final int QUALITY_FLOOR = 70;
+    public static final int RESOLUTION_PREFERRED_QUALITY_FLOOR = 40;
+    public static final float SCALE_STEP = 0.75f;
+    public static final int MIN_DIMENSION = 320;
+
+    /**
+     * An image in whatever form the platform decodes into.
+     */
+    public interface Image {
+        int getWidth();
+
+        int getHeight();
+
+        byte[] compress(int quality);
+
+        Image scale(int width, int height);
+
+        /**
+         * Frees an intermediate image created by {@link #scale(int, int)}. Never called on the source.
+         */
+        void release();
+    }
+
+    private QualitySearch() {
+    }
+
+    public static Result encode(Image source, int byteBudget, boolean preferResolution) {
+        final int qualityFloor = preferResolution ? RESOLUTION_PREFERRED_QUALITY_FLOOR : QUALITY_FLOOR;
+        int attempts = 0;
+
+        Image image = source;
+        try {
+            while (true) {
+                // Try the best quality first, most photos fit right away.
+                attempts++;
+                byte[] best = image.compress(MAX_QUALITY);
+                int bestQuality = MAX_QUALITY;
+                if (best.length > byteBudget) {
+                    best = null;
+                    int low = qualityFloor;
+                    int high = MAX_QUALITY - 1;
+                    while (low <= high) {
+                        final int quality = (low + high) >>> 1;
+                        attempts++;
+                        final byte[] encoded = image.compress(quality);
+                        if (encoded.length <= byteBudget) {
+                            best = encoded;
+                            bestQuality = quality;
+                            low = quality + 1;
+                        } else {
+                            high = quality - 1;
+                        }
+                    }
+                }
+
+                final boolean canScale = Math.min(image.getWidth(), image.getHeight()) * SCALE_STEP >= MIN_DIMENSION;
+                if (best != null || !canScale) {
+                    if (best == null) {
+                        // Can't shrink any further, settle for the floor.
+                        attempts++;
+                        best = image.compress(qualityFloor);
+                        bestQuality = qualityFloor;
+                    }
+                    return new Result(best, bestQuality, image.getWidth(), image.getHeight(), attempts);
+                }
+
+                final Image scaled = image.scale(
+                        Math.round(image.getWidth() * SCALE_STEP), Math.round(image.getHeight() * SCALE_STEP));
+                if (image != source) {
+                    image.release();
+                }
+                image = scaled;
+            }
+        } finally {
+            if (image != source) {
+                image.release();
+            }
+        }
+    }
+
+    public static class Result {
+        public final byte[] data;
+        public final int quality;
+        public final int width;
+        public final int height;
+        public final int attempts;
+
+        Result(byte[] data, int quality, int width, int height, int attempts) {
+            this.data = data;
+            this.quality = quality;
+            this.width = width;
+            this.height = height;
+            this.attempts = attempts;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner.core;
+
+/**
+ * Picks the power of two by which an image is subsampled while it is decoded.
+ */
+public final class SampleSize {
+    private SampleSize() {
+    }
+
+    /**
+     * @return the smallest sample size that brings both sides down to {@code maxDimension} or less.
+     * @throws IllegalArgumentException if {@code maxDimension} isn't positive, as no sample size gets there.
+     */
+    public static int toFit(int width, int height, int maxDimension) {
+        if (maxDimension <= 0) {
+            throw new IllegalArgumentException("maxDimension must be positive: " + maxDimension);
+        }
+        int inSampleSize = 1;
+        while (width / inSampleSize > maxDimension || height / inSampleSize > maxDimension) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * @return the largest sample size that keeps the image at least as large as the target. A target side of zero or
+     * less is ignored; if both are, the image is not subsampled at all.
+     */
+    public static int toCover(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        while ((targetWidth <= 0 || width / (inSampleSize * 2) >= targetWidth)
+                && (targetHeight <= 0 || height / (inSampleSize * 2) >= targetHeight)
+                && (targetWidth > 0 || targetHeight > 0)) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
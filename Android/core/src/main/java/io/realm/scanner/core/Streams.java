@@ -0,0 +1,58 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+
+package io.realm.scanner.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads whole streams into memory, within a limit.
+ */
+public final class Streams {
+    public static final int PRIME_NUMBER_1000th = 7919;
+
+    private Streams() {
+    }
+
+    /**
+     * Reads the stream to its end. When {@code expectedLength} is known the output is sized for it up front, so the
+     * buffer never has to grow on the way.
+     *
+     * @return the bytes read, or {@code null} if the stream holds more than {@code limit} bytes.
+     */
+    public static byte[] readUpToLimit(InputStream in, int expectedLength, int limit) throws IOException {
+        return readUpToLimit(in, expectedLength, limit, PRIME_NUMBER_1000th);
+    }
+
+    public static byte[] readUpToLimit(InputStream in, int expectedLength, int limit, int bufferSize)
+            throws IOException {
+        final ByteArrayOutputStream byteBuffer = expectedLength > 0
+                ? new ByteArrayOutputStream(expectedLength) : new ByteArrayOutputStream();
+        final byte[] readBytes = new byte[bufferSize];
+        int readLength;
+        while ((readLength = in.read(readBytes)) != -1) {
+            if (byteBuffer.size() + readLength > limit) {
+                return null;
+            }
+            byteBuffer.write(readBytes, 0, readLength);
+        }
+        return byteBuffer.toByteArray();
+    }
+}
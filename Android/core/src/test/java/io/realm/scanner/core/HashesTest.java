@@ -0,0 +1,104 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.realm.scanner.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class HashesTest {
+    private static final int BLACK = 0xff000000;
+    private static final int WHITE = 0xffffffff;
+
+    @Test
+    public void sha256_knownValue() {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", Hashes.sha256(new byte[0]));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                Hashes.sha256("abc".getBytes()));
+    }
+
+    @Test
+    public void dHash_flatImage() {
+        assertEquals(0L, Hashes.dHash(fill(WHITE)));
+        assertEquals(0L, Hashes.dHash(fill(BLACK)));
+    }
+
+    @Test
+    public void dHash_everyPixelBrighterThanItsNeighbour() {
+        final int[] pixels = new int[Hashes.DHASH_WIDTH * Hashes.DHASH_HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            final int level = 255 - (i % Hashes.DHASH_WIDTH) * 16;
+            pixels[i] = 0xff000000 | level << 16 | level << 8 | level;
+        }
+        assertEquals(-1L, Hashes.dHash(pixels));
+    }
+
+    @Test
+    public void dHash_ignoresAlpha() {
+        final int[] opaque = fill(WHITE);
+        final int[] translucent = fill(0x00ffffff);
+        opaque[3] = BLACK;
+        translucent[3] = 0x00000000;
+        assertEquals(Hashes.dHash(opaque), Hashes.dHash(translucent));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dHash_wrongPixelCount() {
+        Hashes.dHash(new int[Hashes.DHASH_WIDTH * Hashes.DHASH_HEIGHT - 1]);
+    }
+
+    @Test
+    public void dHash_smallChangeIsCloseLargeChangeIsFar() {
+        final int[] original = fill(WHITE);
+        final int[] slightlyDifferent = fill(WHITE);
+        slightlyDifferent[10] = BLACK;
+        final int[] striped = new int[original.length];
+        for (int i = 0; i < original.length; i++) {
+            striped[i] = i % 2 == 0 ? WHITE : BLACK;
+        }
+        final long hash = Hashes.dHash(original);
+        assertEquals(1, Hashes.distance(hash, Hashes.dHash(slightlyDifferent)));
+        assertEquals(32, Hashes.distance(hash, Hashes.dHash(striped)));
+    }
+
+    @Test
+    public void distance_isSymmetric() {
+        final long[] hashes = {0L, -1L, 1L, Long.MIN_VALUE, Long.MAX_VALUE, 0x0123456789abcdefL, 0xfedcba9876543210L};
+        for (long lhs : hashes) {
+            for (long rhs : hashes) {
+                assertEquals(Hashes.distance(lhs, rhs), Hashes.distance(rhs, lhs));
+            }
+        }
+    }
+
+    @Test
+    public void distance_countsDifferingBits() {
+        assertEquals(0, Hashes.distance(0x0123456789abcdefL, 0x0123456789abcdefL));
+        assertEquals(64, Hashes.distance(0L, -1L));
+        assertEquals(1, Hashes.distance(Long.MIN_VALUE, 0L));
+        assertEquals(2, Hashes.distance(0b1010L, 0b0110L));
+    }
+
+    private static int[] fill(int color) {
+        final int[] pixels = new int[Hashes.DHASH_WIDTH * Hashes.DHASH_HEIGHT];
+        Arrays.fill(pixels, color);
+        return pixels;
+    }
+}
@@ -0,0 +1,163 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.realm.scanner.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QualitySearchTest {
+
+    @Test
+    public void encode_fitsRightAwayAtMaxQuality() {
+        final FakeImage source = new FakeImage(1600, 1200);
+        final QualitySearch.Result result = QualitySearch.encode(source, source.sizeAt(QualitySearch.MAX_QUALITY),
+                false);
+        assertEquals(QualitySearch.MAX_QUALITY, result.quality);
+        assertEquals(1600, result.width);
+        assertEquals(1, result.attempts);
+    }
+
+    @Test
+    public void encode_neverExceedsMaxQuality() {
+        final QualitySearch.Result result = QualitySearch.encode(new FakeImage(100, 100), Integer.MAX_VALUE, false);
+        assertEquals(QualitySearch.MAX_QUALITY, result.quality);
+    }
+
+    @Test
+    public void encode_findsHighestQualityWithinBudget() {
+        final FakeImage source = new FakeImage(1600, 1200);
+        final int budget = source.sizeAt(75);
+        final QualitySearch.Result result = QualitySearch.encode(source, budget, false);
+        assertEquals(75, result.quality);
+        assertTrue(result.data.length <= budget);
+        assertEquals(1600, result.width);
+    }
+
+    @Test
+    public void encode_budgetJustBelowAQuality() {
+        final FakeImage source = new FakeImage(1600, 1200);
+        final QualitySearch.Result result = QualitySearch.encode(source, source.sizeAt(75) - 1, false);
+        assertEquals(74, result.quality);
+    }
+
+    @Test
+    public void encode_scalesDownOnceFloorDoesNotFit() {
+        final FakeImage source = new FakeImage(1600, 1200);
+        final QualitySearch.Result result = QualitySearch.encode(source,
+                source.sizeAt(QualitySearch.QUALITY_FLOOR) - 1, false);
+        assertEquals(1200, result.width);
+        assertEquals(900, result.height);
+        assertTrue(result.quality >= QualitySearch.QUALITY_FLOOR);
+        assertFalse(source.released);
+        source.assertIntermediatesReleased();
+    }
+
+    @Test
+    public void encode_preferResolutionLowersTheFloorFirst() {
+        final FakeImage source = new FakeImage(1600, 1200);
+        final QualitySearch.Result result = QualitySearch.encode(source,
+                source.sizeAt(QualitySearch.QUALITY_FLOOR) - 1, true);
+        assertEquals(1600, result.width);
+        assertTrue(result.quality < QualitySearch.QUALITY_FLOOR);
+        assertTrue(result.quality >= QualitySearch.RESOLUTION_PREFERRED_QUALITY_FLOOR);
+    }
+
+    @Test
+    public void encode_settlesForFloorWhenNothingFits() {
+        final FakeImage source = new FakeImage(1600, 1200);
+        final QualitySearch.Result result = QualitySearch.encode(source, 1, false);
+        assertEquals(QualitySearch.QUALITY_FLOOR, result.quality);
+        // Scaled down as far as MIN_DIMENSION allows, and returned even though it is over budget.
+        assertTrue(Math.min(result.width, result.height) >= QualitySearch.MIN_DIMENSION);
+        assertTrue(Math.min(result.width, result.height) * QualitySearch.SCALE_STEP < QualitySearch.MIN_DIMENSION);
+        assertTrue(result.data.length > 1);
+        assertFalse(source.released);
+        source.assertIntermediatesReleased();
+    }
+
+    @Test
+    public void encode_sourceAlreadyBelowMinDimension() {
+        final FakeImage source = new FakeImage(200, 100);
+        final QualitySearch.Result result = QualitySearch.encode(source, 1, true);
+        assertEquals(QualitySearch.RESOLUTION_PREFERRED_QUALITY_FLOOR, result.quality);
+        assertEquals(200, result.width);
+        assertEquals(0, source.scaled.size());
+    }
+
+    /**
+     * Encodes to one byte per hundred pixels per quality point, so sizes are exact and grow with quality.
+     */
+    private static class FakeImage implements QualitySearch.Image {
+        final int width;
+        final int height;
+        final List<FakeImage> scaled = new ArrayList<>();
+        boolean released;
+
+        FakeImage(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        int sizeAt(int quality) {
+            return (int) ((long) width * height * quality / 100);
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public byte[] compress(int quality) {
+            assertFalse(released);
+            return new byte[sizeAt(quality)];
+        }
+
+        @Override
+        public QualitySearch.Image scale(int width, int height) {
+            assertFalse(released);
+            final FakeImage image = new FakeImage(width, height);
+            scaled.add(image);
+            return image;
+        }
+
+        @Override
+        public void release() {
+            assertFalse(released);
+            released = true;
+        }
+
+        void assertIntermediatesReleased() {
+            for (FakeImage image : scaled) {
+                assertTrue(image.released);
+                image.assertIntermediatesReleased();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.realm.scanner.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SampleSizeTest {
+
+    @Test
+    public void toFit_leavesSmallImagesAlone() {
+        assertEquals(1, SampleSize.toFit(1600, 1200, 1600));
+        assertEquals(1, SampleSize.toFit(100, 100, 1600));
+    }
+
+    @Test
+    public void toFit_subsamplesUntilBothSidesFit() {
+        assertEquals(2, SampleSize.toFit(3200, 1000, 1600));
+        assertEquals(4, SampleSize.toFit(1000, 3202, 1600));
+        assertEquals(4, SampleSize.toFit(4032, 3024, 1600));
+    }
+
+    @Test
+    public void toFit_zeroSizedImage() {
+        assertEquals(1, SampleSize.toFit(0, 0, 1600));
+        assertEquals(1, SampleSize.toFit(-1, -1, 1600));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toFit_zeroMaxDimension() {
+        SampleSize.toFit(1600, 1200, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toFit_negativeMaxDimension() {
+        SampleSize.toFit(1600, 1200, -1);
+    }
+
+    @Test
+    public void toCover_keepsImageAtLeastAsLargeAsTarget() {
+        assertEquals(4, SampleSize.toCover(4000, 3000, 1000, 750));
+        assertEquals(2, SampleSize.toCover(4000, 3000, 1000, 751));
+        assertEquals(1, SampleSize.toCover(4000, 3000, 2001, 0));
+    }
+
+    @Test
+    public void toCover_ignoresNonPositiveTargetSides() {
+        assertEquals(8, SampleSize.toCover(4000, 3000, 500, 0));
+        assertEquals(8, SampleSize.toCover(4000, 3000, -1, 375));
+    }
+
+    @Test
+    public void toCover_noTargetAtAll() {
+        assertEquals(1, SampleSize.toCover(4000, 3000, 0, 0));
+        assertEquals(1, SampleSize.toCover(4000, 3000, -1, -1));
+    }
+
+    @Test
+    public void toCover_targetLargerThanImage() {
+        assertEquals(1, SampleSize.toCover(100, 100, 1000, 1000));
+    }
+
+    @Test
+    public void toCover_boundsThatFailedToDecode() {
+        // BitmapFactory reports -1 for both sides when it can't read the header.
+        assertEquals(1, SampleSize.toCover(-1, -1, 192, 192));
+        assertEquals(1, SampleSize.toCover(0, 0, 192, 192));
+    }
+}
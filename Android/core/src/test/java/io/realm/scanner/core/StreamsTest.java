@@ -0,0 +1,89 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright 2016 Realm Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.realm.scanner.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class StreamsTest {
+
+    @Test
+    public void readUpToLimit_exactlyAtLimit() throws IOException {
+        final byte[] data = bytes(1000);
+        assertArrayEquals(data, Streams.readUpToLimit(new ByteArrayInputStream(data), data.length, 1000));
+    }
+
+    @Test
+    public void readUpToLimit_oneByteOverLimit() throws IOException {
+        final byte[] data = bytes(1001);
+        assertNull(Streams.readUpToLimit(new ByteArrayInputStream(data), data.length, 1000));
+    }
+
+    @Test
+    public void readUpToLimit_unknownLength() throws IOException {
+        final byte[] data = bytes(3 * Streams.PRIME_NUMBER_1000th + 1);
+        assertArrayEquals(data, Streams.readUpToLimit(new ByteArrayInputStream(data), -1, data.length));
+        assertNull(Streams.readUpToLimit(new ByteArrayInputStream(data), -1, data.length - 1));
+    }
+
+    @Test
+    public void readUpToLimit_expectedLengthIsWrong() throws IOException {
+        final byte[] data = bytes(5000);
+        assertArrayEquals(data, Streams.readUpToLimit(new ByteArrayInputStream(data), 10, 5000));
+        assertNull(Streams.readUpToLimit(new ByteArrayInputStream(data), 10, 4999));
+    }
+
+    @Test
+    public void readUpToLimit_emptyStream() throws IOException {
+        assertArrayEquals(new byte[0], Streams.readUpToLimit(new ByteArrayInputStream(new byte[0]), 0, 1000));
+    }
+
+    @Test
+    public void readUpToLimit_shortReads() throws IOException {
+        // Streams from a content provider rarely fill the buffer in one read.
+        final byte[] data = bytes(1000);
+        final InputStream trickle = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] buffer, int offset, int length) {
+                return super.read(buffer, offset, Math.min(length, 7));
+            }
+        };
+        assertArrayEquals(data, Streams.readUpToLimit(trickle, data.length, 1000, 64));
+    }
+
+    @Test
+    public void readUpToLimit_bufferSmallerThanLimit() throws IOException {
+        final byte[] data = bytes(1000);
+        assertArrayEquals(data, Streams.readUpToLimit(new ByteArrayInputStream(data), -1, 1000, 16));
+        assertNull(Streams.readUpToLimit(new ByteArrayInputStream(data), -1, 999, 16));
+    }
+
+    private static byte[] bytes(int length) {
+        final byte[] data = new byte[length];
+        Arrays.fill(data, (byte) 0x5a);
+        data[length - 1] = 1;
+        return data;
+    }
+}
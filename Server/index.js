@@ -1,8 +1,10 @@
 'use strict';
 
-var fs = require('fs');
 var Realm = require('realm');
 var VisualRecognition = require('watson-developer-cloud/visual-recognition/v3');
+var JobQueue = require('./job-queue');
+var RecognitionStub = require('./recognition-stub');
+var Retention = require('./retention');
 
 // Insert the Realm admin token
 // Linux: `cat /etc/realm/admin_token.base64`
@@ -20,6 +22,46 @@ var SERVER_URL = 'realm://127.0.0.1:9080';
 // Realms that match.
 var NOTIFIER_PATH = "^/.*/scanner$";
 
+// How many scans are analysed at the same time, across all users. Each one
+// keeps up to three Watson requests in flight.
+var WORKER_COUNT = parseInt(process.env.SCANNER_WORKERS, 10) || 4;
+
+// Scans waiting for a worker before new ones are held back and retried
+var MAX_QUEUE_DEPTH = parseInt(process.env.SCANNER_MAX_QUEUE_DEPTH, 10) || 100;
+
+// Delay before a held back scan, or a failed analysis, is tried again, and
+// how often an analysis is attempted before its scan is marked as failed
+var RETRY_DELAY_MS = 5000;
+var MAX_ATTEMPTS = 3;
+
+// How often queue depth and latency are logged
+var METRICS_INTERVAL_MS = 60000;
+
+// By default each result is written as soon as Watson returns it, which lets
+// the app show them progressively. In aggregation mode the three results are
+// gathered and committed together with the Completed status, one changeset
+// per scan instead of three. If they take longer than the timeout, whatever
+// has arrived is committed and the rest follow progressively.
+var AGGREGATE_RESULTS = process.env.SCANNER_AGGREGATE_RESULTS == 'true';
+var AGGREGATE_TIMEOUT_MS = 15000;
+
+// Results are written as typed objects (TextResult, Classification with its
+// ImageClasses, FaceDetection with its Faces) that clients format themselves.
+// The preformatted strings the iOS app reads are written alongside them until
+// this is turned off. Realms whose clients don't know the typed objects always
+// get the strings.
+var WRITE_LEGACY_RESULTS = process.env.SCANNER_LEGACY_RESULTS != 'false';
+
+// What happens to the uploaded image once a scan is done, see retention.js.
+// "completed" removes it from the synced Realm as soon as the scan is
+// Completed, "ttl" once the scan is older than PAYLOAD_TTL_MS, and "keep"
+// leaves it alone. Set SCANNER_PAYLOAD_ARCHIVE_DIR to have the images written
+// to disk before they are removed.
+var PAYLOAD_RETENTION = process.env.SCANNER_PAYLOAD_RETENTION || 'completed';
+var PAYLOAD_TTL_MS = (parseFloat(process.env.SCANNER_PAYLOAD_TTL_HOURS) || 24) * 3600 * 1000;
+var RETENTION_SWEEP_INTERVAL_MS = 10 * 60 * 1000;
+var PAYLOAD_ARCHIVE_DIR = process.env.SCANNER_PAYLOAD_ARCHIVE_DIR;
+
 //Insert the Realm access token which came with your download of Realm Mobile Platform Professional Edition
 Realm.Sync.setAccessToken('INSERT_YOUR_REALM_ACCESS_TOKEN');
 
@@ -38,11 +80,32 @@ var kTextScanResultReady = "TextScanResultReady";
 var kFaceDetectionResultReady = "FaceDetectionResultReady";
 var kCompletedStatus = "Completed";
 
-// Setup IBM Bluemix SDK
-var visual_recognition = new VisualRecognition({
-    api_key: BLUEMIX_API_KEY,
-    version_date: '2016-05-20'
-});
+// Setup IBM Bluemix SDK, or a local stand-in when load testing. The stub's
+// latency and error rates are set through the environment, see
+// loadtest/README.md.
+var visual_recognition;
+
+// A number from the environment, or the fallback if it is unset or not a
+// number. An explicit 0 is kept.
+function envNumber(name, fallback) {
+    var value = parseFloat(process.env[name]);
+    return isNaN(value) ? fallback : value;
+}
+
+if (process.env.SCANNER_RECOGNITION_STUB == 'true') {
+    visual_recognition = new RecognitionStub({
+        latencyMs: envNumber('STUB_LATENCY_MS', 500),
+        jitterMs: envNumber('STUB_JITTER_MS', 200),
+        errorRate: envNumber('STUB_ERROR_RATE', 0),
+        retryableRate: envNumber('STUB_RETRYABLE_RATE', 1)
+    });
+    console.log("Using the recognition stub instead of Watson");
+} else {
+    visual_recognition = new VisualRecognition({
+        api_key: BLUEMIX_API_KEY,
+        version_date: '2016-05-20'
+    });
+}
 
 /*
 Utility Functions
@@ -77,149 +140,458 @@ function isRealmList(x) {
     return x !== null && x !== undefined && x.constructor === Realm.List
 }
 
-var change_notification_callback = function(change_event) {
-    let realm = change_event.realm;
-    let changes = change_event.changes.Scan;
-    let scanIndexes = changes.insertions;
-    
-    console.log(changes);
-    
-    // Get the scan object to processes
+/*
+Android clients upload the image through a separate ImagePayload object linked
+from the scan, so status and result writes never touch the image. Older clients
+still put the bytes straight into scan.imageData.
+
+A payload is either whole (imageData is set), or split into chunkCount
+ImageChunk objects that arrive in separate changesets. A chunked scan is only
+picked up once every chunk is present.
+*/
+function isPayloadComplete(scan) {
+    var payload = scan.payload;
+    if (!isRealmObject(payload) || payload.chunkCount == 0) {
+        return true;
+    }
+    return payload.chunks.length == payload.chunkCount;
+}
+
+// False once the image has been stripped by the retention policy
+function hasImageData(scan) {
+    if (isRealmObject(scan.payload)) {
+        return true;
+    }
+    return scan.imageData !== null && scan.imageData !== undefined;
+}
+
+function scanImageData(scan) {
+    var payload = scan.payload;
+    if (!isRealmObject(payload)) {
+        return new Buffer(new Uint8Array(scan.imageData));
+    }
+    if (payload.chunkCount == 0) {
+        return new Buffer(new Uint8Array(payload.imageData));
+    }
+    var chunks = payload.chunks.sorted('index');
+    var buffers = [];
+    for (var i = 0; i < chunks.length; i++) {
+        buffers.push(new Buffer(new Uint8Array(chunks[i].data)));
+    }
+    return Buffer.concat(buffers);
+}
+
+/*
+Every recognition call gets its own multipart file built straight from the
+image in memory. Nothing touches the disk, and concurrent scans never share
+any state. The filename and content type only describe the upload to Watson.
+*/
+function imageParams(imageBuffer) {
+    return {
+        images_file: {
+            value: imageBuffer,
+            options: {
+                filename: 'subject.jpeg',
+                contentType: 'image/jpeg'
+            }
+        }
+    };
+}
+
+/*
+Scans created by a client with tracing enabled link to a ScanTiming. The
+server stamps when it picked the scan up, when the analysis started and when
+each result was ready, in the same transactions as the matching writes, so
+tracing adds no changesets of its own except for the start of the analysis.
+Must be called from within a write transaction.
+*/
+function stampTiming(scan, stage, time) {
+    var timing = scan.timing;
+    if (isRealmObject(timing) && timing[stage] == 0) {
+        timing[stage] = time || Date.now();
+    }
+}
+
+/*
+Calls back for every scan that is still waiting to be processed and has its
+whole image available: newly inserted scans, scans whose chunked payload was
+just completed, and failed scans the client has put back to Uploading to have
+them retried. The callback is expected to move the scan out of the Uploading
+status, which keeps a scan from being reported twice.
+*/
+function forEachUploadedScan(realm, changes, callback) {
+    function addIfReady(scan) {
+        if (isRealmObject(scan) && scan.status == kUploadingStatus && hasImageData(scan) &&
+            isPayloadComplete(scan)) {
+            callback(scan);
+        }
+    }
+
     var scans = realm.objects("Scan");
-    
+    var scanIndexes = changes.Scan ? changes.Scan.insertions.concat(changes.Scan.modifications) : [];
     for (var i = 0; i < scanIndexes.length; i++) {
-        let scanIndex = scanIndexes[i];
-        // Retrieve the scan object from the Realm with index
-        let scan = scans[scanIndex];
-        if (isRealmObject(scan)) {
-          if (scan.status == kUploadingStatus) {
-            console.log("New scan received: " + change_event.path);
-            console.log(JSON.stringify(scan))
-
-            realm.write(function() {
-                scan.status = kProcessingStatus;
-            });
-
-            try {
-                fs.unlinkSync("./subject.jpeg");
-            } catch (err) {
-                // ignore
+        addIfReady(scans[scanIndexes[i]]);
+    }
+
+    if (changes.ImagePayload) {
+        var payloads = realm.objects("ImagePayload");
+        var payloadIndexes = changes.ImagePayload.insertions.concat(changes.ImagePayload.modifications);
+        for (var j = 0; j < payloadIndexes.length; j++) {
+            var payload = payloads[payloadIndexes[j]];
+            if (isRealmObject(payload) && isString(payload.scanId)) {
+                var owners = scans.filtered('scanId == $0', payload.scanId);
+                for (var k = 0; k < owners.length; k++) {
+                    addIfReady(owners[k]);
+                }
             }
+        }
+    }
+}
 
-            var imageBytes = new Uint8Array(scan.imageData);
-            var imageBuffer = new Buffer(imageBytes);
-            fs.writeFileSync("./subject.jpeg", imageBuffer);
-            var params = {
-                images_file: fs.createReadStream('./subject.jpeg')
-            };
-
-            function errorReceived(err) {
-                console.log("Error: " + err);
-                realm.write(function() {
-                    scan.status = kFailedStatus;
-                });
+/*
+Scans are not analysed as soon as they arrive. Each one is queued under the
+path of the Realm it came from, and a fixed number of workers pick from those
+queues round-robin, so a burst of uploads can neither fan out into an
+unbounded number of Watson calls nor starve the other users.
+
+An analysis that fails with a transient error (rate limited or unavailable)
+is retried on its own later; the scan stays in the Processing status until it
+either succeeds or runs out of attempts.
+*/
+var kAnalyses = ["text", "classify", "faces"];
+
+var job_queue = new JobQueue({
+    workerCount: WORKER_COUNT,
+    maxDepth: MAX_QUEUE_DEPTH,
+    retryDelay: RETRY_DELAY_MS,
+    maxAttempts: MAX_ATTEMPTS,
+    run: analyzeScan,
+    onGiveUp: function(job) {
+        console.log("Giving up on scan after " + job.attempts + " attempts: " + job.path);
+        stopAggregating(job);
+        setScanStatus(job, kFailedStatus);
+    }
+});
+
+setInterval(function() {
+    console.log("Job queue: " + JSON.stringify(job_queue.stats()));
+}, METRICS_INTERVAL_MS).unref();
+
+function isRetryable(err) {
+    var code = err && err.code;
+    return code == 429 || code >= 500 || code == 'ECONNRESET' || code == 'ETIMEDOUT';
+}
+
+function setScanStatus(job, status) {
+    if (!job.scan.isValid()) {
+        return;
+    }
+    job.realm.write(function() {
+        job.scan.status = status;
+    });
+}
+
+function hasTypedResults(realm) {
+    return realm.schema.some(function(objectSchema) {
+        return objectSchema.name == "Classification";
+    });
+}
+
+/*
+The fields to write for one result: the typed object, the legacy string, or
+both. Typed values are plain objects, realm.write creates the Realm objects.
+*/
+function resultValues(realm, legacyField, legacyValue, typedField, typedValue) {
+    var values = {};
+    var typed = hasTypedResults(realm);
+    if (typed) {
+        values[typedField] = typedValue;
+    }
+    if (WRITE_LEGACY_RESULTS || !typed) {
+        values[legacyField] = legacyValue;
+    }
+    return values;
+}
+
+/*
+Writes the values of one analysis together with its status, or holds them
+back in aggregation mode. The stage is the ScanTiming field stamped for it.
+*/
+function writeResult(job, stage, values, status) {
+    var scan = job.scan;
+    if (!scan.isValid()) {
+        return;
+    }
+    if (!job.aggregating) {
+        job.realm.write(function() {
+            for (var field in values) {
+                scan[field] = values[field];
             }
+            scan.status = status;
+            stampTiming(scan, stage);
+        });
+        return;
+    }
+    job.results[stage] = values;
+    job.resultTimes[stage] = Date.now();
+    job.lastStatus = status;
+    if (Object.keys(job.results).length == kAnalyses.length) {
+        commitResults(job, kCompletedStatus);
+    }
+}
 
-            // recognize text
-            visual_recognition.recognizeText(params, function(err, res) {
-                if (err) {
-                    errorReceived(err);
-                } else {
-                    console.log("Visual Result: " + res);
-                    var result = res.images[0];
-                    var finalText = "";
-                    if (result.text && result.text.length > 0) {
-                        finalText = "**Text Scan Result**\n\n";
-                        finalText += result.text;
-                    }
-                    console.log("Found Text: " + finalText);
-                    realm.write(function() {
-                        scan.textScanResult = finalText;
-                        scan.status = kTextScanResultReady;
-                    });
+function startAggregating(job) {
+    job.aggregating = true;
+    job.results = {};
+    job.resultTimes = {};
+    job.aggregateTimer = setTimeout(function() {
+        console.log("Timed out gathering results, committing what has arrived: " + job.path);
+        commitResults(job, job.lastStatus);
+    }, AGGREGATE_TIMEOUT_MS);
+}
+
+function stopAggregating(job) {
+    clearTimeout(job.aggregateTimer);
+    job.aggregating = false;
+}
+
+function commitResults(job, status) {
+    stopAggregating(job);
+    var scan = job.scan;
+    var results = job.results;
+    if (!scan.isValid() || Object.keys(results).length == 0) {
+        return;
+    }
+    job.realm.write(function() {
+        for (var stage in results) {
+            for (var field in results[stage]) {
+                scan[field] = results[stage][field];
+            }
+            stampTiming(scan, stage, job.resultTimes[stage]);
+        }
+        scan.status = status;
+        if (status == kCompletedStatus) {
+            stampTiming(scan, "completedAt");
+        }
+    });
+}
+
+function processScan(path, realm, scan) {
+    console.log("New scan received: " + path);
+    console.log(JSON.stringify(scan))
+
+    realm.write(function() {
+        scan.status = kProcessingStatus;
+        stampTiming(scan, "pickedUpAt");
+    });
+
+    job_queue.submit(path, {
+        path: path,
+        realm: realm,
+        scan: scan,
+        analyses: kAnalyses.slice()
+    });
+}
+
+function analyzeScan(job, done) {
+    var scan = job.scan;
+    if (!scan.isValid()) {
+        // Deleted by the client while it was waiting in the queue
+        done(false);
+        return;
+    }
+
+    // The scan is already Processing, so a missing or incomplete image has to
+    // fail it, or it would never leave that status.
+    var imageBuffer;
+    try {
+        imageBuffer = scanImageData(scan);
+        if (imageBuffer.length == 0) {
+            throw new Error("No image data");
+        }
+    } catch (err) {
+        console.log("Unable to read the image of scan " + scan.scanId + ": " + err);
+        setScanStatus(job, kFailedStatus);
+        done(false);
+        return;
+    }
+
+    if (isRealmObject(scan.timing) && scan.timing.analysisStartedAt == 0) {
+        job.realm.write(function() {
+            stampTiming(scan, "analysisStartedAt");
+        });
+    }
+
+    if (AGGREGATE_RESULTS && !job.aggregateTimer) {
+        startAggregating(job);
+    }
+
+    var outstanding = job.analyses.length;
+    var retryAnalyses = [];
+    var failed = false;
+
+    function analysisFinished(analysis, err) {
+        if (err) {
+            console.log("Error: " + err);
+            if (isRetryable(err)) {
+                retryAnalyses.push(analysis);
+            } else {
+                failed = true;
+            }
+        }
+        if (--outstanding > 0) {
+            return;
+        }
+        if (failed) {
+            stopAggregating(job);
+            setScanStatus(job, kFailedStatus);
+            done(false);
+        } else if (retryAnalyses.length > 0) {
+            job.analyses = retryAnalyses;
+            done(true);
+        } else {
+            done(false);
+        }
+    }
+
+    // recognize text
+    if (job.analyses.indexOf("text") >= 0) {
+        visual_recognition.recognizeText(imageParams(imageBuffer), function(err, res) {
+            if (!err) {
+                console.log("Visual Result: " + res);
+                var result = res.images[0];
+                var finalText = "";
+                if (result.text && result.text.length > 0) {
+                    finalText = "**Text Scan Result**\n\n";
+                    finalText += result.text;
                 }
-            });
-
-            // classify image
-            /*{
-                "custom_classes": 0,
-                "images": [{
-                    "classifiers": [{
-                        "classes": [{
-                            "class": "coffee",
-                            "score": 0.900249,
-                            "type_hierarchy": "/products/beverages/coffee"
-                        }, {
-                            "class": "cup",
-                            "score": 0.645656,
-                            "type_hierarchy": "/products/cup"
-                        }, {
-                            "class": "food",
-                            "score": 0.524979
-                        }],
-                        "classifier_id": "default",
-                        "name": "default"
-                    }],
-                    "image": "subject.jpeg"
+                console.log("Found Text: " + finalText);
+                writeResult(job, "textScanResultAt",
+                    resultValues(job.realm, "textScanResult", finalText, "text", { text: result.text || "" }),
+                    kTextScanResultReady);
+            }
+            analysisFinished("text", err);
+        });
+    }
+
+    // classify image
+    /*{
+        "custom_classes": 0,
+        "images": [{
+            "classifiers": [{
+                "classes": [{
+                    "class": "coffee",
+                    "score": 0.900249,
+                    "type_hierarchy": "/products/beverages/coffee"
+                }, {
+                    "class": "cup",
+                    "score": 0.645656,
+                    "type_hierarchy": "/products/cup"
+                }, {
+                    "class": "food",
+                    "score": 0.524979
                 }],
-                "images_processed": 1
-            }*/
-            visual_recognition.classify(params, function(err, res) {
-                if (err) {
-                    errorReceived(err);
-                } else {
-                    console.log("Classify Result: " + res);
-                    var classes = res.images[0].classifiers[0].classes;
-                    console.log(JSON.stringify(classes));
-                    realm.write(function() {
-                        var classificationResult = "";
-                        if (classes.length > 0) {
-                            classificationResult += "**Classification Result**\n\n";
-                        }
-                        for (var i = 0; i < classes.length; i++) {
-                            var imageClass = classes[i];
-                            classificationResult += "Class: " + imageClass.class + "\n";
-                            classificationResult += "Score: " + imageClass.score + "\n";
-                            if (imageClass.type_hierarchy) {
-                                classificationResult += "Type: " + imageClass.type_hierarchy + "\n";
-                            }
-                            classificationResult += "\n";
-                        }
-                        scan.classificationResult = classificationResult;
-                        scan.status = kClassificationResultReady;
-                    });
+                "classifier_id": "default",
+                "name": "default"
+            }],
+            "image": "subject.jpeg"
+        }],
+        "images_processed": 1
+    }*/
+    if (job.analyses.indexOf("classify") >= 0) {
+        visual_recognition.classify(imageParams(imageBuffer), function(err, res) {
+            if (!err) {
+                console.log("Classify Result: " + res);
+                var classes = res.images[0].classifiers[0].classes;
+                console.log(JSON.stringify(classes));
+                var classificationResult = "";
+                if (classes.length > 0) {
+                    classificationResult += "**Classification Result**\n\n";
                 }
-            });
-
-            // Detect Faces
-            visual_recognition.detectFaces(params, function(err, res) {
-                if (err) {
-                    errorReceived(err);
-                } else {
-                    console.log("Faces Result: " + res);
-                    console.log(JSON.stringify(res));
-                    realm.write(function() {
-                        var faces = res.images[0].faces;
-                        var faceDetectionResult = "";
-                        if (faces.length > 0) {
-                            faceDetectionResult = "**Face Detection Result**\n\n";
-                            faceDetectionResult += "Number of faces detected: " + faces.length + "\n";
-                            for (var i = 0; i < faces.length; i++) {
-                                var face = faces[i];
-                                faceDetectionResult += "Gender: " + face.gender.gender + ", Age: " + face.age.min + " - " + face.age.max;
-                                faceDetectionResult += "\n";
-                            }
-                        }
-                        scan.faceDetectionResult = faceDetectionResult;
-                        scan.status = kFaceDetectionResultReady;
-                    });
+                for (var i = 0; i < classes.length; i++) {
+                    var imageClass = classes[i];
+                    classificationResult += "Class: " + imageClass.class + "\n";
+                    classificationResult += "Score: " + imageClass.score + "\n";
+                    if (imageClass.type_hierarchy) {
+                        classificationResult += "Type: " + imageClass.type_hierarchy + "\n";
+                    }
+                    classificationResult += "\n";
                 }
-            });
-          }
-        }
+                var typedClasses = classes.map(function(imageClass) {
+                    return {
+                        scanId: scan.scanId,
+                        className: imageClass.class,
+                        score: imageClass.score,
+                        typeHierarchy: imageClass.type_hierarchy || null
+                    };
+                });
+                writeResult(job, "classificationResultAt",
+                    resultValues(job.realm, "classificationResult", classificationResult,
+                        "classification", { classes: typedClasses }),
+                    kClassificationResultReady);
+            }
+            analysisFinished("classify", err);
+        });
+    }
+
+    // Detect Faces
+    if (job.analyses.indexOf("faces") >= 0) {
+        visual_recognition.detectFaces(imageParams(imageBuffer), function(err, res) {
+            if (!err) {
+                console.log("Faces Result: " + res);
+                console.log(JSON.stringify(res));
+                var faces = res.images[0].faces;
+                var faceDetectionResult = "";
+                if (faces.length > 0) {
+                    faceDetectionResult = "**Face Detection Result**\n\n";
+                    faceDetectionResult += "Number of faces detected: " + faces.length + "\n";
+                    for (var i = 0; i < faces.length; i++) {
+                        var face = faces[i];
+                        faceDetectionResult += "Gender: " + face.gender.gender + ", Age: " + face.age.min + " - " + face.age.max;
+                        faceDetectionResult += "\n";
+                    }
+                }
+                var typedFaces = faces.map(function(face) {
+                    return {
+                        scanId: scan.scanId,
+                        ageMin: face.age.min || 0,
+                        ageMax: face.age.max || 0,
+                        gender: face.gender.gender
+                    };
+                });
+                writeResult(job, "faceDetectionResultAt",
+                    resultValues(job.realm, "faceDetectionResult", faceDetectionResult,
+                        "faceDetection", { faces: typedFaces }),
+                    kFaceDetectionResultReady);
+            }
+            analysisFinished("faces", err);
+        });
     }
+}
+
+var change_notification_callback = function(change_event) {
+    let realm = change_event.realm;
+    let changes = change_event.changes;
+
+    console.log(changes.Scan);
+
+    // Process every scan whose image has been fully uploaded
+    forEachUploadedScan(realm, changes, function(scan) {
+        processScan(change_event.path, realm, scan);
+    });
+
+    // Drop the images of the scans that have just been completed
+    retention.track(change_event.path, realm, changes);
 };
 
+var retention = new Retention({
+    policy: PAYLOAD_RETENTION,
+    ttlMs: PAYLOAD_TTL_MS,
+    sweepIntervalMs: RETENTION_SWEEP_INTERVAL_MS,
+    archiveDir: PAYLOAD_ARCHIVE_DIR,
+    readImage: scanImageData
+});
+
 //Create the admin user
 var admin_user = Realm.Sync.User.adminUser(REALM_ADMIN_TOKEN, SERVER_URL);
 
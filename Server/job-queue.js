@@ -0,0 +1,184 @@
+'use strict';
+
+/*
+Job Queue
+
+A bounded pool of workers fed from one FIFO queue per key. Workers pick keys
+round-robin, so one user uploading a burst of scans can't starve everyone
+else. When the queue is full new jobs are not dropped: they are held back and
+offered again after a delay.
+
+The run function is called as run(job, done). Calling done(true) asks for the
+job to be retried after a delay, up to maxAttempts; once a job has used up
+its attempts onGiveUp(job) is called.
+*/
+
+var METRIC_SAMPLES = 1000;
+
+function percentile(samples, p) {
+    if (samples.length === 0) {
+        return 0;
+    }
+    var sorted = samples.slice().sort(function(a, b) { return a - b; });
+    var index = Math.ceil(p / 100 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+}
+
+function recordSample(samples, value) {
+    samples.push(value);
+    if (samples.length > METRIC_SAMPLES) {
+        samples.shift();
+    }
+}
+
+function JobQueue(options) {
+    this.workerCount = options.workerCount;
+    this.maxDepth = options.maxDepth;
+    this.retryDelay = options.retryDelay;
+    this.maxAttempts = options.maxAttempts;
+    this.run = options.run;
+    this.onGiveUp = options.onGiveUp || function() {};
+
+    this.queues = {};
+    this.keys = [];
+    this.nextKey = 0;
+    this.depth = 0;
+    this.active = 0;
+    this.waiting = 0;
+
+    this.counters = { submitted: 0, completed: 0, retried: 0, overflowed: 0, gaveUp: 0 };
+    this.waitTimes = [];
+    this.runTimes = [];
+}
+
+/*
+Queues a job under the given key, e.g. the path of the Realm it came from. If
+the queue is full the job is offered again after retryDelay.
+*/
+JobQueue.prototype.submit = function(key, job) {
+    this.counters.submitted++;
+    this._offer(key, job);
+};
+
+JobQueue.prototype._offer = function(key, job) {
+    var self = this;
+    if (self.depth >= self.maxDepth) {
+        self.counters.overflowed++;
+        self._later(function() {
+            self._offer(key, job);
+        });
+        return;
+    }
+
+    if (!self.queues[key]) {
+        self.queues[key] = [];
+        self.keys.push(key);
+    }
+    job.enqueuedAt = Date.now();
+    self.queues[key].push(job);
+    self.depth++;
+    self._dispatch();
+};
+
+JobQueue.prototype._later = function(fn) {
+    var self = this;
+    self.waiting++;
+    setTimeout(function() {
+        self.waiting--;
+        fn();
+    }, self.retryDelay);
+};
+
+JobQueue.prototype._take = function() {
+    for (var i = 0; i < this.keys.length; i++) {
+        var index = (this.nextKey + i) % this.keys.length;
+        var key = this.keys[index];
+        var queue = this.queues[key];
+        if (queue.length > 0) {
+            this.nextKey = (index + 1) % this.keys.length;
+            this.depth--;
+            var job = queue.shift();
+            if (queue.length === 0) {
+                delete this.queues[key];
+                this.keys.splice(index, 1);
+                if (this.nextKey > index) {
+                    this.nextKey--;
+                }
+            }
+            return { key: key, job: job };
+        }
+    }
+    return null;
+};
+
+JobQueue.prototype._dispatch = function() {
+    var self = this;
+    while (self.active < self.workerCount) {
+        var next = self._take();
+        if (!next) {
+            return;
+        }
+        self._start(next.key, next.job);
+    }
+};
+
+JobQueue.prototype._start = function(key, job) {
+    var self = this;
+    var startedAt = Date.now();
+    var finished = false;
+    self.active++;
+    recordSample(self.waitTimes, startedAt - job.enqueuedAt);
+    job.attempts = (job.attempts || 0) + 1;
+
+    function done(retry) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        self.active--;
+        recordSample(self.runTimes, Date.now() - startedAt);
+
+        if (retry && job.attempts < self.maxAttempts) {
+            self.counters.retried++;
+            self._later(function() {
+                self._offer(key, job);
+            });
+        } else if (retry) {
+            self.counters.gaveUp++;
+            self.onGiveUp(job);
+        } else {
+            self.counters.completed++;
+        }
+        self._dispatch();
+    }
+
+    try {
+        self.run(job, done);
+    } catch (err) {
+        console.log("Job threw: " + err);
+        done(false);
+    }
+};
+
+JobQueue.prototype.stats = function() {
+    return {
+        depth: this.depth,
+        active: this.active,
+        waiting: this.waiting,
+        keys: this.keys.length,
+        submitted: this.counters.submitted,
+        completed: this.counters.completed,
+        retried: this.counters.retried,
+        overflowed: this.counters.overflowed,
+        gaveUp: this.counters.gaveUp,
+        waitP50: percentile(this.waitTimes, 50),
+        waitP95: percentile(this.waitTimes, 95),
+        waitP99: percentile(this.waitTimes, 99),
+        runP50: percentile(this.runTimes, 50),
+        runP95: percentile(this.runTimes, 95),
+        runP99: percentile(this.runTimes, 99)
+    };
+};
+
+module.exports = JobQueue;
+module.exports.percentile = percentile;
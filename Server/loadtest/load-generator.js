@@ -0,0 +1,289 @@
+'use strict';
+
+/*
+Load Generator
+
+Simulates a number of app users uploading scans to a local Realm Object
+Server, and measures how long it takes for every result to come back. Each
+simulated client logs in as its own user, so the global listener sees one
+scanner Realm per client, and creates its scans the same way
+MainActivity.uploadImage does: a Scan in the Uploading status with its
+Thumbnail and ScanTiming, linked to an ImagePayload, either whole or split
+into ImageChunks committed one per transaction. The Realm has the app's full
+schema, see ../schema.js, so the server writes typed results, stamps the
+timings and applies its payload retention just as it does for the app.
+
+Once all three results of a scan are in, the client marks it Completed, as
+the app does. At the end the throughput and the p50/p95/p99 latency from
+upload to each result and to completion are printed.
+
+Run the server with SCANNER_RECOGNITION_STUB=true to keep everything offline,
+see README.md in this directory.
+*/
+
+var crypto = require('crypto');
+var Realm = require('realm');
+var percentile = require('../job-queue').percentile;
+var scannerSchema = require('../schema');
+
+var options = parseArguments(process.argv.slice(2), {
+    server: '127.0.0.1:9080',
+    clients: 10,
+    scans: 10,
+    interval: 1000,
+    size: 200 * 1024,
+    chunked: false,
+    password: 'password',
+    timeout: 300000
+});
+
+var CHUNK_SIZE = 256 * 1024;
+var THUMBNAIL_SIZE = 192;
+var THUMBNAIL_BYTES = 8 * 1024;
+var kUploadingStatus = "Uploading";
+var kFailedStatus = "Failed";
+var kCompletedStatus = "Completed";
+
+var kMilestones = ["textScanResult", "classificationResult", "faceDetectionResult", kCompletedStatus];
+var kMilestoneNames = {
+    textScanResult: "TEXTSCAN_RESULT_READY",
+    classificationResult: "CLASSIFICATION_RESULT_READY",
+    faceDetectionResult: "FACE_DETECTION_RESULT_READY",
+    Completed: "COMPLETED"
+};
+
+var latencies = {};
+kMilestones.forEach(function(milestone) {
+    latencies[milestone] = [];
+});
+var uploaded = 0;
+var finished = 0;
+var failed = 0;
+var startedAt;
+
+function parseArguments(args, defaults) {
+    var result = defaults;
+    for (var i = 0; i < args.length; i++) {
+        var match = /^--([^=]+)(?:=(.*))?$/.exec(args[i]);
+        if (!match) {
+            continue;
+        }
+        var value = match[2] === undefined ? true : match[2];
+        result[match[1]] = typeof defaults[match[1]] == 'number' ? Number(value) : value;
+    }
+    return result;
+}
+
+function openClientRealm(index, callback) {
+    var username = 'scanner-load-' + index + '@realm.io';
+    var authUrl = 'http://' + options.server;
+    Realm.Sync.User.login(authUrl, username, options.password, function(err, user) {
+        if (err) {
+            Realm.Sync.User.register(authUrl, username, options.password, function(err, user) {
+                if (err) {
+                    callback(err);
+                } else {
+                    callback(null, openRealm(user));
+                }
+            });
+        } else {
+            callback(null, openRealm(user));
+        }
+    });
+}
+
+function openRealm(user) {
+    return new Realm({
+        sync: {
+            user: user,
+            url: 'realm://' + options.server + '/~/scanner'
+        },
+        schema: scannerSchema
+    });
+}
+
+function Client(realm) {
+    this.realm = realm;
+    this.pending = {};
+
+    var self = this;
+    realm.addListener('change', function() {
+        self.checkPending();
+    });
+}
+
+Client.prototype.upload = function() {
+    var realm = this.realm;
+    var scanId = crypto.randomBytes(16).toString('hex');
+    var imageData = crypto.randomBytes(options.size);
+    var imageHash = crypto.createHash('sha256').update(imageData).digest('hex');
+    var chunkCount = options.chunked ? Math.ceil(imageData.length / CHUNK_SIZE) : 0;
+    var now = Date.now();
+    var payload;
+    var timing;
+
+    this.pending[scanId] = { uploadedAt: now, reached: {} };
+    uploaded++;
+
+    realm.write(function() {
+        // Like ScanTrace, which stamps the capture stages all at once
+        timing = realm.create('ScanTiming', {
+            scanId: scanId,
+            capturedAt: now,
+            decodedAt: now,
+            encodedAt: now,
+            committedAt: now,
+            uploadedAt: chunkCount == 0 ? now : 0,
+            pickedUpAt: 0,
+            analysisStartedAt: 0,
+            textScanResultAt: 0,
+            classificationResultAt: 0,
+            faceDetectionResultAt: 0,
+            completedAt: 0
+        });
+        payload = realm.create('ImagePayload', {
+            scanId: scanId,
+            imageHash: imageHash,
+            imageData: chunkCount == 0 ? new Uint8Array(imageData).buffer : null,
+            chunkCount: chunkCount,
+            committedChunks: 0,
+            chunks: []
+        });
+        realm.create('Scan', {
+            scanId: scanId,
+            status: kUploadingStatus,
+            createdAt: now,
+            imageHash: imageHash,
+            perceptualHash: 0,
+            imageSize: imageData.length,
+            imageWidth: 0,
+            imageHeight: 0,
+            payload: payload,
+            timing: timing,
+            retryCount: 0,
+            fromCache: false,
+            thumbnail: {
+                scanId: scanId,
+                data: new Uint8Array(crypto.randomBytes(THUMBNAIL_BYTES)).buffer,
+                width: THUMBNAIL_SIZE,
+                height: THUMBNAIL_SIZE
+            }
+        });
+    });
+
+    // Like ChunkedUploader, one chunk per transaction
+    for (var index = 0; index < chunkCount; index++) {
+        var chunk = imageData.slice(index * CHUNK_SIZE, (index + 1) * CHUNK_SIZE);
+        realm.write(function() {
+            payload.chunks.push({ index: index, data: new Uint8Array(chunk).buffer });
+            payload.committedChunks = index + 1;
+            if (index + 1 == chunkCount) {
+                timing.uploadedAt = Date.now();
+            }
+        });
+    }
+};
+
+Client.prototype.checkPending = function() {
+    var realm = this.realm;
+    var now = Date.now();
+    for (var scanId in this.pending) {
+        var scans = realm.objects('Scan').filtered('scanId == $0', scanId);
+        if (scans.length == 0) {
+            continue;
+        }
+        var scan = scans[0];
+        var state = this.pending[scanId];
+
+        if (scan.status == kFailedStatus) {
+            failed++;
+            delete this.pending[scanId];
+            continue;
+        }
+
+        var complete = true;
+        for (var i = 0; i < 3; i++) {
+            var field = kMilestones[i];
+            if (scan[field] === null || scan[field] === undefined) {
+                complete = false;
+            } else if (!state.reached[field]) {
+                state.reached[field] = true;
+                latencies[field].push(now - state.uploadedAt);
+            }
+        }
+        if (complete) {
+            latencies[kCompletedStatus].push(now - state.uploadedAt);
+            delete this.pending[scanId];
+            finished++;
+            if (scan.status != kCompletedStatus) {
+                realm.write(function() {
+                    scan.status = kCompletedStatus;
+                    if (scan.timing && scan.timing.completedAt == 0) {
+                        scan.timing.completedAt = now;
+                    }
+                });
+            }
+        }
+    }
+    if (finished + failed == options.clients * options.scans) {
+        report();
+        process.exit(0);
+    }
+};
+
+function report() {
+    var elapsedSeconds = (Date.now() - startedAt) / 1000;
+    console.log("");
+    console.log("Clients: " + options.clients + ", scans per client: " + options.scans +
+        ", image size: " + options.size + " bytes" + (options.chunked ? " (chunked)" : ""));
+    console.log("Uploaded: " + uploaded + ", completed: " + finished + ", failed: " + failed +
+        ", unfinished: " + (uploaded - finished - failed));
+    console.log("Elapsed: " + elapsedSeconds.toFixed(1) + " s, throughput: " +
+        (finished / elapsedSeconds).toFixed(2) + " scans/s");
+    console.log("");
+    console.log("Latency from upload (ms)         count     p50     p95     p99");
+    kMilestones.forEach(function(milestone) {
+        var samples = latencies[milestone];
+        console.log(pad(kMilestoneNames[milestone], 30) +
+            pad(String(samples.length), 8, true) +
+            pad(String(percentile(samples, 50)), 8, true) +
+            pad(String(percentile(samples, 95)), 8, true) +
+            pad(String(percentile(samples, 99)), 8, true));
+    });
+}
+
+function pad(text, width, left) {
+    while (text.length < width) {
+        text = left ? ' ' + text : text + ' ';
+    }
+    return text;
+}
+
+function startClient(realm) {
+    var client = new Client(realm);
+    var sent = 0;
+    // Spread the clients out so they don't all upload in lockstep
+    setTimeout(function next() {
+        client.upload();
+        if (++sent < options.scans) {
+            setTimeout(next, options.interval);
+        }
+    }, Math.random() * options.interval);
+}
+
+startedAt = Date.now();
+for (var i = 0; i < options.clients; i++) {
+    openClientRealm(i, function(err, realm) {
+        if (err) {
+            console.log("Unable to log in: " + err);
+            process.exit(1);
+        }
+        startClient(realm);
+    });
+}
+
+setTimeout(function() {
+    console.log("Timed out waiting for results");
+    report();
+    process.exit(1);
+}, options.timeout);
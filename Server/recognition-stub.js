@@ -0,0 +1,88 @@
+'use strict';
+
+/*
+Recognition Stub
+
+Stands in for the Watson VisualRecognition client when load testing, so the
+server can be exercised without a network connection or an API key. Each call
+answers with a canned response in the same shape Watson uses, after a random
+delay. A share of the calls fail instead, either with a retryable error (rate
+limited) or a fatal one (bad request).
+
+    latencyMs      mean delay before answering
+    jitterMs       the delay varies by up to this much either way
+    errorRate      share of calls that fail, between 0 and 1
+    retryableRate  share of the failures that are retryable, between 0 and 1
+*/
+
+function RecognitionStub(options) {
+    this.latencyMs = options.latencyMs || 0;
+    this.jitterMs = options.jitterMs || 0;
+    this.errorRate = options.errorRate || 0;
+    this.retryableRate = options.retryableRate === undefined ? 1 : options.retryableRate;
+    this.calls = 0;
+}
+
+RecognitionStub.prototype._respond = function(response, callback) {
+    var self = this;
+    self.calls++;
+    var delay = self.latencyMs + (Math.random() * 2 - 1) * self.jitterMs;
+    setTimeout(function() {
+        if (Math.random() < self.errorRate) {
+            var retryable = Math.random() < self.retryableRate;
+            var err = new Error(retryable ? "Too many requests (stub)" : "Bad request (stub)");
+            err.code = retryable ? 429 : 400;
+            callback(err);
+        } else {
+            callback(null, response);
+        }
+    }, Math.max(0, delay));
+};
+
+RecognitionStub.prototype.recognizeText = function(params, callback) {
+    this._respond({
+        images: [{
+            text: "realm scanner",
+            image: "subject.jpeg"
+        }],
+        images_processed: 1
+    }, callback);
+};
+
+RecognitionStub.prototype.classify = function(params, callback) {
+    this._respond({
+        custom_classes: 0,
+        images: [{
+            classifiers: [{
+                classes: [{
+                    "class": "coffee",
+                    score: 0.900249,
+                    type_hierarchy: "/products/beverages/coffee"
+                }, {
+                    "class": "cup",
+                    score: 0.645656,
+                    type_hierarchy: "/products/cup"
+                }],
+                classifier_id: "default",
+                name: "default"
+            }],
+            image: "subject.jpeg"
+        }],
+        images_processed: 1
+    }, callback);
+};
+
+RecognitionStub.prototype.detectFaces = function(params, callback) {
+    this._respond({
+        images: [{
+            faces: [{
+                age: { min: 25, max: 34, score: 0.446989 },
+                gender: { gender: "FEMALE", score: 0.982014 }
+            }],
+            image: "subject.jpeg"
+        }],
+        images_processed: 1
+    }, callback);
+};
+
+module.exports = RecognitionStub;
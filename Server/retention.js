@@ -0,0 +1,189 @@
+'use strict';
+
+/*
+Payload Retention
+
+Once a scan has its results, nobody needs the full image in the synced Realm
+any more, yet it would be replicated to every device of the user and grow the
+Realm files for good. This strips the ImagePayload (with its ImageChunks), or
+the image older clients put straight into scan.imageData, from finished scans.
+The scan keeps its results and its Thumbnail, which is all the history needs.
+Scans without a Thumbnail, from older clients, would be left with nothing to
+show, so they keep their image.
+
+    policy            "completed" strips a scan as soon as it is Completed,
+                      "ttl" only once it is older than ttlMs, "keep" never
+    ttlMs             finished or failed scans older than this are stripped
+                      under either policy; scans without createdAt, from
+                      older clients, are only stripped when Completed
+    sweepIntervalMs   how often the Realms are checked for expired scans
+    archiveDir        if set, images are written to this directory as
+                      <scanId>.jpeg before they are stripped
+    readImage         function(scan) returning the image as a Buffer
+
+Realms are remembered as their changes come in, see track(), and swept
+periodically.
+*/
+
+var fs = require('fs');
+var path = require('path');
+
+var kCompletedStatus = "Completed";
+var kUploadingStatus = "Uploading";
+var kProcessingStatus = "Processing";
+
+function hasProperty(realm, objectType, property) {
+    return realm.schema.some(function(objectSchema) {
+        return objectSchema.name == objectType && objectSchema.properties[property] !== undefined;
+    });
+}
+
+function Retention(options) {
+    this.policy = options.policy;
+    this.ttlMs = options.ttlMs;
+    this.archiveDir = options.archiveDir;
+    this.readImage = options.readImage;
+    this.realms = {};
+    this.archiving = {};
+    this.counters = { stripped: 0, archived: 0, bytes: 0 };
+
+    if (this.policy != "keep") {
+        var self = this;
+        setInterval(function() {
+            self.sweep();
+        }, options.sweepIntervalMs).unref();
+    }
+}
+
+/*
+Remembers the Realm for the periodic sweep, and strips the scans among the
+changes that have just been completed.
+*/
+Retention.prototype.track = function(realmPath, realm, changes) {
+    if (this.policy == "keep") {
+        return;
+    }
+    this.realms[realmPath] = realm;
+    if (this.policy != "completed" || !changes.Scan) {
+        return;
+    }
+    var scans = realm.objects("Scan");
+    var indexes = changes.Scan.insertions.concat(changes.Scan.modifications);
+    var completed = [];
+    for (var i = 0; i < indexes.length; i++) {
+        var scan = scans[indexes[i]];
+        if (scan && scan.isValid() && scan.status == kCompletedStatus && this._canStrip(realm, scan)) {
+            completed.push(scan);
+        }
+    }
+    this._strip(realmPath, realm, completed);
+};
+
+Retention.prototype.sweep = function() {
+    var cutoff = Date.now() - this.ttlMs;
+    for (var realmPath in this.realms) {
+        var realm = this.realms[realmPath];
+        if (!hasProperty(realm, "Scan", "createdAt")) {
+            continue;
+        }
+        var expired = realm.objects("Scan").filtered(
+            'status != $0 AND status != $1 AND createdAt > 0 AND createdAt < $2',
+            kUploadingStatus, kProcessingStatus, cutoff);
+        var stale = [];
+        for (var i = 0; i < expired.length; i++) {
+            if (this._canStrip(realm, expired[i])) {
+                stale.push(expired[i]);
+            }
+        }
+        this._strip(realmPath, realm, stale);
+    }
+    console.log("Retention: " + JSON.stringify(this.counters));
+};
+
+Retention.prototype._canStrip = function(realm, scan) {
+    if (!hasProperty(realm, "Scan", "thumbnail") || !scan.thumbnail) {
+        return false;
+    }
+    if (scan.payload) {
+        return true;
+    }
+    return hasProperty(realm, "Scan", "imageData") && scan.imageData !== null && scan.imageData !== undefined;
+};
+
+Retention.prototype._strip = function(realmPath, realm, scans) {
+    if (scans.length === 0) {
+        return;
+    }
+    if (!this.archiveDir) {
+        this._delete(realmPath, realm, scans);
+        return;
+    }
+    // The images are written out asynchronously, so the event loop stays free
+    // for the other Realms, and only deleted once they are on disk. An image
+    // that couldn't be archived is kept until the next sweep.
+    var self = this;
+    var archived = [];
+    var remaining = 0;
+    scans.forEach(function(scan) {
+        var scanId = scan.scanId;
+        if (self.archiving[scanId]) {
+            return;
+        }
+        var image;
+        try {
+            image = self.readImage(scan);
+        } catch (err) {
+            console.log("Unable to read the image of scan " + scanId + ": " + err);
+            return;
+        }
+        self.archiving[scanId] = true;
+        remaining++;
+        fs.writeFile(path.join(self.archiveDir, scanId + '.jpeg'), image, function(err) {
+            delete self.archiving[scanId];
+            if (err) {
+                console.log("Unable to archive the image of scan " + scanId + ": " + err);
+            } else {
+                self.counters.archived++;
+                archived.push(scan);
+            }
+            if (--remaining == 0 && archived.length > 0) {
+                self._delete(realmPath, realm, archived);
+            }
+        });
+    });
+};
+
+Retention.prototype._delete = function(realmPath, realm, scans) {
+    var self = this;
+    var legacy = hasProperty(realm, "Scan", "imageData");
+    var stripped = 0;
+    // One changeset for the whole batch, which the clients download as the
+    // deletion of the payloads.
+    realm.write(function() {
+        scans.forEach(function(scan) {
+            if (!scan.isValid()) {
+                return;
+            }
+            var payload = scan.payload;
+            if (payload) {
+                if (payload.imageData) {
+                    self.counters.bytes += payload.imageData.byteLength;
+                }
+                for (var i = 0; i < payload.chunks.length; i++) {
+                    self.counters.bytes += payload.chunks[i].data ? payload.chunks[i].data.byteLength : 0;
+                }
+                realm.delete(payload.chunks);
+                realm.delete(payload);
+            }
+            if (legacy && scan.imageData) {
+                self.counters.bytes += scan.imageData.byteLength;
+                scan.imageData = null;
+            }
+            stripped++;
+        });
+    });
+    this.counters.stripped += stripped;
+    console.log("Stripped the images of " + stripped + " scans: " + realmPath);
+};
+
+module.exports = Retention;
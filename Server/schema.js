@@ -0,0 +1,130 @@
+'use strict';
+
+/*
+Synced Scanner Schema
+
+The classes of the Android app's ScanModule (io.realm.scanner.model), for the
+Node.js code that opens a scanner Realm as a client, like the load generator.
+The server itself takes the schema from the Realms it is notified about. Keep
+this in step with the model classes: a Java String or byte[] is optional, a
+primitive or @Required field is not, and @Index maps to indexed.
+*/
+
+var ScanSchema = {
+    name: 'Scan',
+    properties: {
+        scanId: 'string',
+        status: 'string',
+        createdAt: { type: 'int', indexed: true },
+        textScanResult: { type: 'string', optional: true },
+        classificationResult: { type: 'string', optional: true },
+        faceDetectionResult: { type: 'string', optional: true },
+        text: { type: 'object', objectType: 'TextResult', optional: true },
+        classification: { type: 'object', objectType: 'Classification', optional: true },
+        faceDetection: { type: 'object', objectType: 'FaceDetection', optional: true },
+        imageHash: { type: 'string', optional: true },
+        perceptualHash: 'int',
+        imageSize: 'int',
+        imageWidth: 'int',
+        imageHeight: 'int',
+        payload: { type: 'object', objectType: 'ImagePayload', optional: true },
+        timing: { type: 'object', objectType: 'ScanTiming', optional: true },
+        retryCount: 'int',
+        fromCache: 'bool',
+        thumbnail: { type: 'object', objectType: 'Thumbnail', optional: true }
+    }
+};
+
+var ImagePayloadSchema = {
+    name: 'ImagePayload',
+    properties: {
+        scanId: { type: 'string', optional: true },
+        imageHash: { type: 'string', optional: true },
+        imageData: { type: 'data', optional: true },
+        chunkCount: 'int',
+        committedChunks: 'int',
+        chunks: { type: 'list', objectType: 'ImageChunk' }
+    }
+};
+
+var ImageChunkSchema = {
+    name: 'ImageChunk',
+    properties: {
+        index: 'int',
+        data: { type: 'data', optional: true }
+    }
+};
+
+var ScanTimingSchema = {
+    name: 'ScanTiming',
+    properties: {
+        scanId: { type: 'string', optional: true },
+        capturedAt: 'int',
+        decodedAt: 'int',
+        encodedAt: 'int',
+        committedAt: 'int',
+        uploadedAt: 'int',
+        pickedUpAt: 'int',
+        analysisStartedAt: 'int',
+        textScanResultAt: 'int',
+        classificationResultAt: 'int',
+        faceDetectionResultAt: 'int',
+        completedAt: 'int'
+    }
+};
+
+var ThumbnailSchema = {
+    name: 'Thumbnail',
+    properties: {
+        scanId: { type: 'string', optional: true, indexed: true },
+        data: { type: 'data', optional: true },
+        width: 'int',
+        height: 'int'
+    }
+};
+
+var TextResultSchema = {
+    name: 'TextResult',
+    properties: {
+        text: { type: 'string', optional: true }
+    }
+};
+
+var ClassificationSchema = {
+    name: 'Classification',
+    properties: {
+        classes: { type: 'list', objectType: 'ImageClass' }
+    }
+};
+
+var ImageClassSchema = {
+    name: 'ImageClass',
+    properties: {
+        scanId: { type: 'string', optional: true, indexed: true },
+        className: { type: 'string', optional: true, indexed: true },
+        score: 'double',
+        typeHierarchy: { type: 'string', optional: true, indexed: true }
+    }
+};
+
+var FaceDetectionSchema = {
+    name: 'FaceDetection',
+    properties: {
+        faces: { type: 'list', objectType: 'Face' }
+    }
+};
+
+var FaceSchema = {
+    name: 'Face',
+    properties: {
+        scanId: { type: 'string', optional: true, indexed: true },
+        ageMin: { type: 'int', indexed: true },
+        ageMax: 'int',
+        gender: { type: 'string', optional: true, indexed: true }
+    }
+};
+
+module.exports = [
+    ScanSchema, ImagePayloadSchema, ImageChunkSchema, ScanTimingSchema, ThumbnailSchema,
+    TextResultSchema, ClassificationSchema, ImageClassSchema, FaceDetectionSchema, FaceSchema
+];